@@ -14,8 +14,10 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Scanner;
+import java.util.stream.Stream;
 
 public class Main {
     private static ProductRepository productRepository;
@@ -29,6 +31,7 @@ public class Main {
     private static TransferStockUseCase transferStockUseCase;
     private static RegisterUserUseCase registerUserUseCase;
     private static AuthenticateUserUseCase authenticateUserUseCase;
+    private static ArchiveDataUseCase archiveDataUseCase;
 
     private static InventorySubject inventorySubject;
     private static StockSelectionStrategy stockSelectionStrategy;
@@ -52,15 +55,17 @@ public class Main {
         inventorySubject.attach(new StockAlertObserver());
 
         stockSelectionStrategy = new ExpiryPriorityStockSelectionStrategy();
+        UnitOfWork unitOfWork = new MySQLUnitOfWork();
 
         processSaleUseCase = new ProcessSaleUseCase(productRepository, billRepository,
-                inventoryRepository, stockBatchRepository, stockSelectionStrategy, inventorySubject);
+                inventoryRepository, stockBatchRepository, stockSelectionStrategy, inventorySubject, unitOfWork);
         addStockBatchUseCase = new AddStockBatchUseCase(productRepository, stockBatchRepository,
-                inventoryRepository, inventorySubject);
+                inventoryRepository, inventorySubject, unitOfWork);
         transferStockUseCase = new TransferStockUseCase(inventoryRepository, stockBatchRepository,
-                stockSelectionStrategy, inventorySubject);
+                stockSelectionStrategy, inventorySubject, unitOfWork);
         registerUserUseCase = new RegisterUserUseCase(userRepository);
         authenticateUserUseCase = new AuthenticateUserUseCase(userRepository);
+        archiveDataUseCase = new ArchiveDataUseCase(billRepository, stockBatchRepository);
 
         scanner = new Scanner(System.in);
     }
@@ -376,19 +381,22 @@ public class Main {
     }
 
     private static void viewStockBatches() {
-        List<StockBatch> batches = stockBatchRepository.findAll();
-        if (batches.isEmpty()) {
-            System.out.println("No stock batches.");
-            return;
-        }
         DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-        System.out.printf("%n%-30s %-10s %-12s %-6s %-12s %-8s%n", "Batch Code", "Product", "Purchased", "Qty",
-                "Expiry", "Status");
-        System.out.println("─".repeat(80));
-        for (StockBatch b : batches) {
-            String status = b.isExpired() ? "EXPIRED" : (b.getDaysUntilExpiry() < 30 ? "EXPIRING" : "OK");
-            System.out.printf("%-30s %-10s %-12s %-6d %-12s %-8s%n", b.getBatchId(), b.getProductCode(),
-                    b.getPurchaseDate().format(fmt), b.getQuantity(), b.getExpiryDate().format(fmt), status);
+        try (Stream<StockBatch> batches = stockBatchRepository.streamAll()) {
+            Iterator<StockBatch> it = batches.iterator();
+            if (!it.hasNext()) {
+                System.out.println("No stock batches.");
+                return;
+            }
+            System.out.printf("%n%-30s %-10s %-12s %-6s %-12s %-8s%n", "Batch Code", "Product", "Purchased", "Qty",
+                    "Expiry", "Status");
+            System.out.println("─".repeat(80));
+            while (it.hasNext()) {
+                StockBatch b = it.next();
+                String status = b.isExpired() ? "EXPIRED" : (b.getDaysUntilExpiry() < 30 ? "EXPIRING" : "OK");
+                System.out.printf("%-30s %-10s %-12s %-6d %-12s %-8s%n", b.getBatchId(), b.getProductCode(),
+                        b.getPurchaseDate().format(fmt), b.getQuantity(), b.getExpiryDate().format(fmt), status);
+            }
         }
     }
 
@@ -567,7 +575,8 @@ public class Main {
             System.out.println("3. Reorder Levels Report");
             System.out.println("4. Stock Report");
             System.out.println("5. Bill Report");
-            System.out.println("6. Back");
+            System.out.println("6. Archive Old Data");
+            System.out.println("7. Back");
             System.out.print("Select option: ");
 
             switch (getIntInput()) {
@@ -583,13 +592,17 @@ public class Main {
                             "\n" + new ReorderLevelsReport(inventoryRepository, productRepository).generateReport());
                     break;
                 case 4:
-                    System.out
-                            .println("\n" + new StockReport(stockBatchRepository, productRepository).generateReport());
+                    boolean includeArchive = getIncludeArchiveChoice();
+                    System.out.println("\n" + new StockReport(stockBatchRepository, productRepository, includeArchive)
+                            .generateReport());
                     break;
                 case 5:
                     generateBillReport();
                     break;
                 case 6:
+                    archiveOldData();
+                    break;
+                case 7:
                     return;
                 default:
                     System.out.println("Invalid option.");
@@ -602,12 +615,40 @@ public class Main {
         String dateStr = scanner.nextLine().trim();
         LocalDate date = dateStr.isEmpty() ? LocalDate.now() : LocalDate.parse(dateStr);
         Bill.TransactionType type = getTransactionTypeChoice();
-        System.out.println("\n" + new DailySalesReport(billRepository, date, type).generateReport());
+        boolean includeArchive = getIncludeArchiveChoice();
+        System.out.println("\n" + new DailySalesReport(billRepository, date, type, includeArchive).generateReport());
     }
 
     private static void generateBillReport() {
         Bill.TransactionType type = getTransactionTypeChoice();
-        System.out.println("\n" + new BillReport(billRepository, type).generateReport());
+        boolean includeArchive = getIncludeArchiveChoice();
+        System.out.println("\n" + new BillReport(billRepository, type, includeArchive).generateReport());
+    }
+
+    /**
+     * Archives bills older than -Dsyos.archive.horizonDays (default 365) and
+     * every depleted stock batch.
+     */
+    private static void archiveOldData() {
+        int horizonDays = Integer.getInteger("syos.archive.horizonDays", ArchiveDataUseCase.DEFAULT_HORIZON_DAYS);
+        LocalDate horizon = LocalDate.now().minusDays(horizonDays);
+        System.out.print("Archive bills before " + horizon + " and all depleted batches? (y/N): ");
+        if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+            return;
+        }
+
+        try {
+            ArchiveDataUseCase.ArchiveResult result = archiveDataUseCase.execute(horizon);
+            System.out.println("Archived " + result.getBillsArchived() + " bills and " +
+                    result.getBatchesArchived() + " depleted batches.");
+        } catch (ArchiveDataUseCase.ArchiveException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private static boolean getIncludeArchiveChoice() {
+        System.out.print("Include archived data? (y/N): ");
+        return scanner.nextLine().trim().equalsIgnoreCase("y");
     }
 
     private static Bill.TransactionType getTransactionTypeChoice() {
@@ -34,6 +34,27 @@ public class Bill {
         this.customerId = builder.customerId;
     }
 
+    private Bill(Bill source, int serialNumber) {
+        this.serialNumber = serialNumber;
+        this.billDate = source.billDate;
+        this.items = source.items;
+        this.subtotal = source.subtotal;
+        this.discount = source.discount;
+        this.total = source.total;
+        this.cashTendered = source.cashTendered;
+        this.change = source.change;
+        this.transactionType = source.transactionType;
+        this.customerId = source.customerId;
+    }
+
+    /**
+     * Returns a copy of this bill carrying the given serial number, e.g. the
+     * one assigned when the bill was stored.
+     */
+    public Bill withSerialNumber(int serialNumber) {
+        return new Bill(this, serialNumber);
+    }
+
     public int getSerialNumber() {
         return serialNumber;
     }
@@ -5,6 +5,15 @@ package com.syos.entities;
  * Follows Single Responsibility Principle.
  */
 public class Inventory {
+    /**
+     * Where a quantity of the product is held.
+     */
+    public enum Location {
+        SHELF,
+        STORE,
+        ONLINE
+    }
+
     private final String productCode;
     private int shelfQuantity;
     private int storeQuantity;
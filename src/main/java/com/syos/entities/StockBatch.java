@@ -2,13 +2,14 @@ package com.syos.entities;
 
 import java.time.LocalDate;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represents a batch of stock for a product.
  * Follows Single Responsibility Principle.
  */
 public class StockBatch {
-    private static int batchCounter = 0;
+    private static final AtomicInteger batchCounter = new AtomicInteger();
     private final String productCode;
     private final LocalDate purchaseDate;
     private int quantity;
@@ -39,8 +40,19 @@ public class StockBatch {
         this.expiryDate = expiryDate;
     }
 
+    /**
+     * Makes generated batch IDs continue after an ID that is already stored,
+     * so batches created after a restart do not reuse it. IDs that were not
+     * generated here are ignored.
+     */
+    public static void reserveBatchId(String batchId) {
+        if (batchId != null && batchId.matches("B\\d{1,9}")) {
+            batchCounter.accumulateAndGet(Integer.parseInt(batchId.substring(1)), Math::max);
+        }
+    }
+
     private String generateBatchId() {
-        return "B" + (++batchCounter);
+        return "B" + batchCounter.incrementAndGet();
     }
 
     private void validateStockBatch(String productCode, int quantity, LocalDate purchaseDate, LocalDate expiryDate) {
@@ -0,0 +1,199 @@
+package com.syos.frameworks.database;
+
+import com.zaxxer.hikari.HikariConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Connection pool and driver settings for the MySQL database.
+ *
+ * Settings are read from, in increasing order of precedence: the built-in
+ * defaults, the properties file named by -Dsyos.db.config (default
+ * syos-db.properties in the working directory, optional), environment
+ * variables and system properties. An environment variable overrides a key
+ * by its upper-cased name with dots replaced by underscores, e.g.
+ * SYOS_DB_POOL_MAXIMUMSIZE for syos.db.pool.maximumSize.
+ *
+ * Keys under syos.db.driver. are passed to the MySQL driver as data source
+ * properties, e.g. syos.db.driver.rewriteBatchedStatements=true. Since an
+ * environment variable name cannot say where the driver property name
+ * changes case, a SYOS_DB_DRIVER_ variable that matches no default or file
+ * key adds the property under the rest of its name as written, so it must be
+ * spelled the way the driver does, e.g. SYOS_DB_DRIVER_useSSL=false.
+ */
+public class DatabaseConfig {
+    private static final String PREFIX = "syos.db.";
+    private static final String DRIVER_PREFIX = PREFIX + "driver.";
+    private static final String DRIVER_ENV_PREFIX = envName(DRIVER_PREFIX);
+    private static final String DEFAULT_CONFIG_FILE = "syos-db.properties";
+
+    private final Properties properties;
+
+    private DatabaseConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Loads the configuration from the properties file, the process
+     * environment and the system properties.
+     */
+    public static DatabaseConfig load() {
+        Path file = Paths.get(System.getProperty("syos.db.config", DEFAULT_CONFIG_FILE));
+        return from(readFile(file), System.getenv(), System.getProperties());
+    }
+
+    /**
+     * Builds a configuration by layering file, environment and system settings
+     * over the defaults.
+     */
+    public static DatabaseConfig from(Properties file, Map<String, String> env, Properties system) {
+        Properties merged = defaults();
+        merged.putAll(file);
+        Map<String, String> keysByEnvName = new HashMap<>();
+        for (String key : merged.stringPropertyNames()) {
+            keysByEnvName.put(envName(key), key);
+        }
+        for (Map.Entry<String, String> variable : env.entrySet()) {
+            String name = variable.getKey();
+            String key = keysByEnvName.get(name.toUpperCase());
+            if (key == null && name.length() > DRIVER_ENV_PREFIX.length()
+                    && name.toUpperCase().startsWith(DRIVER_ENV_PREFIX)) {
+                key = DRIVER_PREFIX + name.substring(DRIVER_ENV_PREFIX.length());
+            }
+            if (key != null) {
+                merged.setProperty(key, variable.getValue());
+            }
+        }
+        for (String key : system.stringPropertyNames()) {
+            if (key.startsWith(PREFIX)) {
+                merged.setProperty(key, system.getProperty(key));
+            }
+        }
+        return new DatabaseConfig(merged);
+    }
+
+    private static String envName(String key) {
+        return key.toUpperCase().replace('.', '_');
+    }
+
+    private static Properties defaults() {
+        Properties defaults = new Properties();
+        defaults.setProperty(PREFIX + "url",
+                "jdbc:mysql://localhost:3306/syos_db?useSSL=false&serverTimezone=UTC&allowPublicKeyRetrieval=true");
+        defaults.setProperty(PREFIX + "user", "root");
+        defaults.setProperty(PREFIX + "password", "");
+
+        defaults.setProperty(PREFIX + "pool.maximumSize", "10");
+        defaults.setProperty(PREFIX + "pool.minimumIdle", "2");
+        defaults.setProperty(PREFIX + "pool.connectionTimeoutMs", "30000");
+        defaults.setProperty(PREFIX + "pool.idleTimeoutMs", "600000");
+        defaults.setProperty(PREFIX + "pool.maxLifetimeMs", "1800000");
+
+        defaults.setProperty(DRIVER_PREFIX + "cachePrepStmts", "true");
+        defaults.setProperty(DRIVER_PREFIX + "prepStmtCacheSize", "250");
+        defaults.setProperty(DRIVER_PREFIX + "prepStmtCacheSqlLimit", "2048");
+        defaults.setProperty(DRIVER_PREFIX + "useServerPrepStmts", "true");
+        defaults.setProperty(DRIVER_PREFIX + "rewriteBatchedStatements", "true");
+        defaults.setProperty(DRIVER_PREFIX + "cacheResultSetMetadata", "true");
+        return defaults;
+    }
+
+    private static Properties readFile(Path file) {
+        Properties properties = new Properties();
+        if (!Files.exists(file)) {
+            return properties;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read database configuration " + file, e);
+        }
+        return properties;
+    }
+
+    public String getUrl() {
+        return properties.getProperty(PREFIX + "url");
+    }
+
+    public String getUser() {
+        return properties.getProperty(PREFIX + "user");
+    }
+
+    public String getPassword() {
+        return properties.getProperty(PREFIX + "password");
+    }
+
+    public int getMaximumPoolSize() {
+        return getInt("pool.maximumSize");
+    }
+
+    public int getMinimumIdle() {
+        return getInt("pool.minimumIdle");
+    }
+
+    public long getConnectionTimeoutMs() {
+        return getLong("pool.connectionTimeoutMs");
+    }
+
+    public long getIdleTimeoutMs() {
+        return getLong("pool.idleTimeoutMs");
+    }
+
+    public long getMaxLifetimeMs() {
+        return getLong("pool.maxLifetimeMs");
+    }
+
+    /**
+     * Returns the properties passed to the MySQL driver, without the
+     * syos.db.driver. prefix.
+     */
+    public Properties getDriverProperties() {
+        Properties driver = new Properties();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(DRIVER_PREFIX)) {
+                driver.setProperty(key.substring(DRIVER_PREFIX.length()), properties.getProperty(key));
+            }
+        }
+        return driver;
+    }
+
+    /**
+     * Builds the HikariCP configuration for these settings.
+     */
+    HikariConfig toHikariConfig() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(getUrl());
+        config.setUsername(getUser());
+        config.setPassword(getPassword());
+
+        config.setMaximumPoolSize(getMaximumPoolSize());
+        config.setMinimumIdle(getMinimumIdle());
+        config.setConnectionTimeout(getConnectionTimeoutMs());
+        config.setIdleTimeout(getIdleTimeoutMs());
+        config.setMaxLifetime(getMaxLifetimeMs());
+
+        getDriverProperties().forEach((key, value) -> config.addDataSourceProperty((String) key, value));
+        return config;
+    }
+
+    private int getInt(String key) {
+        return (int) getLong(key);
+    }
+
+    private long getLong(String key) {
+        String value = properties.getProperty(PREFIX + key).trim();
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + PREFIX + key + ": " + value, e);
+        }
+    }
+}
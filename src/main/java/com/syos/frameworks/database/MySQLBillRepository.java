@@ -1,28 +1,79 @@
 package com.syos.frameworks.database;
 
 import com.syos.entities.Bill;
+import com.syos.usecases.SerialNumberAllocator;
 import com.syos.usecases.repositories.BillRepository;
 
 import java.sql.*;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * MySQL implementation of BillRepository.
  */
 public class MySQLBillRepository implements BillRepository {
+    private static final String SEQUENCE_NAME = "bill_serial_number";
+    private static final String LIVE_TABLES =
+            "bills b LEFT JOIN bill_items i ON i.bill_serial_number = b.serial_number";
+    private static final String ARCHIVE_TABLES =
+            "bills_archive b LEFT JOIN bill_items_archive i ON i.bill_serial_number = b.serial_number";
+    private static final String BILL_COLUMNS = "serial_number, bill_date, subtotal, discount, total, " +
+            "cash_tendered, change_amount, transaction_type, customer_id, created_at";
+    private static final String ITEM_COLUMNS = "id, bill_serial_number, product_code, product_name, unit, " +
+            "quantity, price, discount_percentage";
+    private static final RowMapper<Bill.Builder> BILL_MAPPER = new RowMapper<>(
+            "serial_number, bill_date, cash_tendered, transaction_type, customer_id",
+            (rs, c) -> new Bill.Builder()
+                    .serialNumber(rs.getInt(c))
+                    .billDate(rs.getTimestamp(c + 1).toLocalDateTime())
+                    .cashTendered(rs.getDouble(c + 2))
+                    .transactionType(Bill.TransactionType.valueOf(rs.getString(c + 3)))
+                    .customerId(rs.getString(c + 4)));
+    private static final RowMapper<Bill.BillItem> ITEM_MAPPER = new RowMapper<>(
+            "product_code, product_name, unit, quantity, price, discount_percentage",
+            (rs, c) -> new Bill.BillItem(
+                    rs.getString(c),
+                    rs.getString(c + 1),
+                    rs.getString(c + 2),
+                    rs.getInt(c + 3),
+                    rs.getDouble(c + 4),
+                    rs.getDouble(c + 5)));
+    // Item columns follow the bill columns in the joined rows
+    private static final int FIRST_ITEM_COLUMN = BILL_MAPPER.columnCount() + 1;
     private final DatabaseManager dbManager;
+    private final SerialNumberAllocator serialNumbers;
 
     public MySQLBillRepository() {
         this.dbManager = DatabaseManager.getInstance();
+        this.serialNumbers = new SerialNumberAllocator(new MySQLSequenceRepository(), SEQUENCE_NAME,
+                Integer.getInteger("syos.serial.blockSize", SerialNumberAllocator.DEFAULT_BLOCK_SIZE),
+                this::firstUnusedSerialNumber);
     }
 
     @Override
     public void save(Bill bill) {
-        String billSql = "INSERT INTO bills (bill_date, subtotal, discount, total, cash_tendered, change_amount, transaction_type, customer_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        insert(bill);
+    }
+
+    /**
+     * Serials are handed out from the reserved block in memory, so creating a
+     * bill costs only the insert transaction.
+     */
+    @Override
+    public Bill create(Bill draft) {
+        Bill bill = draft.withSerialNumber(serialNumbers.next());
+        insert(bill);
+        return bill;
+    }
+
+    /**
+     * Inserts a bill and its items in one transaction.
+     */
+    private void insert(Bill bill) {
+        String billSql = "INSERT INTO bills (bill_date, subtotal, discount, total, cash_tendered, change_amount, transaction_type, customer_id, serial_number) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
         String itemSql = "INSERT INTO bill_items (bill_serial_number, product_code, product_name, unit, quantity, price, discount_percentage) VALUES (?, ?, ?, ?, ?, ?, ?)";
 
         try (Connection conn = dbManager.getConnection()) {
@@ -37,13 +88,24 @@ public class MySQLBillRepository implements BillRepository {
                 billStmt.setDouble(6, bill.getChange());
                 billStmt.setString(7, bill.getTransactionType().name());
                 billStmt.setString(8, bill.getCustomerId());
+                // Serials come from the allocator; NULL lets AUTO_INCREMENT assign one
+                if (bill.getSerialNumber() > 0) {
+                    billStmt.setInt(9, bill.getSerialNumber());
+                } else {
+                    billStmt.setNull(9, Types.INTEGER);
+                }
 
                 billStmt.executeUpdate();
 
-                ResultSet rs = billStmt.getGeneratedKeys();
-                if (rs.next()) {
-                    int billSerialNumber = rs.getInt(1);
-
+                int billSerialNumber = bill.getSerialNumber();
+                if (billSerialNumber <= 0) {
+                    try (ResultSet rs = billStmt.getGeneratedKeys()) {
+                        if (rs.next()) {
+                            billSerialNumber = rs.getInt(1);
+                        }
+                    }
+                }
+                if (billSerialNumber > 0) {
                     try (PreparedStatement itemStmt = conn.prepareStatement(itemSql)) {
                         for (Bill.BillItem item : bill.getItems()) {
                             itemStmt.setInt(1, billSerialNumber);
@@ -72,114 +134,186 @@ public class MySQLBillRepository implements BillRepository {
 
     @Override
     public Optional<Bill> findBySerialNumber(int serialNumber) {
-        String sql = "SELECT * FROM bills WHERE serial_number = ?";
-
-        try (Connection conn = dbManager.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, serialNumber);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                return Optional.of(mapResultSetToBill(rs, conn));
-            }
-            return Optional.empty();
-
-        } catch (SQLException e) {
-            throw new RuntimeException("Error finding bill: " + e.getMessage(), e);
-        }
+        return findBills("b.serial_number = ?", stmt -> stmt.setInt(1, serialNumber),
+                "Error finding bill").stream().findFirst();
     }
 
     @Override
     public List<Bill> findAll() {
-        String sql = "SELECT * FROM bills ORDER BY serial_number DESC";
-        List<Bill> bills = new ArrayList<>();
-
-        try (Connection conn = dbManager.getConnection();
-                Statement stmt = conn.createStatement();
-                ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                bills.add(mapResultSetToBill(rs, conn));
-            }
-
-        } catch (SQLException e) {
-            throw new RuntimeException("Error finding all bills: " + e.getMessage(), e);
-        }
+        return findBills(null, ParameterBinder.NONE, "Error finding all bills");
+    }
 
-        return bills;
+    @Override
+    public Stream<Bill> streamAll() {
+        return streamBills(LIVE_TABLES, null, ParameterBinder.NONE, "Error streaming all bills");
     }
 
     @Override
     public List<Bill> findByDate(LocalDate date) {
-        String sql = "SELECT * FROM bills WHERE DATE(bill_date) = ? ORDER BY serial_number DESC";
-        List<Bill> bills = new ArrayList<>();
+        return findBills("b.bill_date >= ? AND b.bill_date < ?", stmt -> bindDay(stmt, date),
+                "Error finding bills by date");
+    }
 
-        try (Connection conn = dbManager.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+    @Override
+    public List<Bill> findByTransactionType(Bill.TransactionType type) {
+        return findBills("b.transaction_type = ?", stmt -> stmt.setString(1, type.name()),
+                "Error finding bills by type");
+    }
 
-            stmt.setDate(1, Date.valueOf(date));
-            ResultSet rs = stmt.executeQuery();
+    @Override
+    public Stream<Bill> streamByTransactionType(Bill.TransactionType type) {
+        return streamBills(LIVE_TABLES, "b.transaction_type = ?", stmt -> stmt.setString(1, type.name()),
+                "Error streaming bills by type");
+    }
 
-            while (rs.next()) {
-                bills.add(mapResultSetToBill(rs, conn));
-            }
+    @Override
+    public List<Bill> findByDateAndType(LocalDate date, Bill.TransactionType type) {
+        return findBills("b.bill_date >= ? AND b.bill_date < ? AND b.transaction_type = ?", stmt -> {
+            bindDay(stmt, date);
+            stmt.setString(3, type.name());
+        }, "Error finding bills by date and type");
+    }
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Error finding bills by date: " + e.getMessage(), e);
-        }
+    /**
+     * Binds a day as the half-open range [date, date + 1) to the first two
+     * parameters. Unlike DATE(bill_date) = ?, the range can use the bill_date
+     * index.
+     */
+    private static void bindDay(PreparedStatement stmt, LocalDate date) throws SQLException {
+        stmt.setTimestamp(1, Timestamp.valueOf(date.atStartOfDay()));
+        stmt.setTimestamp(2, Timestamp.valueOf(date.plusDays(1).atStartOfDay()));
+    }
 
-        return bills;
+    @Override
+    public int getNextSerialNumber() {
+        return serialNumbers.next();
     }
 
+    /**
+     * Copies the old bills and their items to the archive tables and deletes
+     * them from the live tables in one transaction. The yearly partitions the
+     * bills fall into are created first, since partition changes commit
+     * implicitly.
+     */
     @Override
-    public List<Bill> findByTransactionType(Bill.TransactionType type) {
-        String sql = "SELECT * FROM bills WHERE transaction_type = ? ORDER BY serial_number DESC";
-        List<Bill> bills = new ArrayList<>();
+    public int archiveBefore(LocalDate horizon) {
+        Timestamp cutoff = Timestamp.valueOf(horizon.atStartOfDay());
+        addArchivePartitions(cutoff);
 
-        try (Connection conn = dbManager.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
 
-            stmt.setString(1, type.name());
-            ResultSet rs = stmt.executeQuery();
+            try (PreparedStatement copyBills = conn.prepareStatement(
+                    "INSERT INTO bills_archive (" + BILL_COLUMNS + ") SELECT " + BILL_COLUMNS +
+                            " FROM bills WHERE bill_date < ?");
+                    PreparedStatement copyItems = conn.prepareStatement(
+                            "INSERT INTO bill_items_archive (" + ITEM_COLUMNS + ") SELECT " + ITEM_COLUMNS +
+                                    " FROM bill_items WHERE bill_serial_number IN " +
+                                    "(SELECT serial_number FROM bills WHERE bill_date < ?)");
+                    PreparedStatement deleteItems = conn.prepareStatement(
+                            "DELETE i FROM bill_items i JOIN bills b ON b.serial_number = i.bill_serial_number " +
+                                    "WHERE b.bill_date < ?");
+                    PreparedStatement deleteBills = conn.prepareStatement(
+                            "DELETE FROM bills WHERE bill_date < ?")) {
+
+                for (PreparedStatement stmt : List.of(copyBills, copyItems, deleteItems, deleteBills)) {
+                    stmt.setTimestamp(1, cutoff);
+                }
+                int archived = copyBills.executeUpdate();
+                copyItems.executeUpdate();
+                deleteItems.executeUpdate();
+                deleteBills.executeUpdate();
 
-            while (rs.next()) {
-                bills.add(mapResultSetToBill(rs, conn));
+                conn.commit();
+                return archived;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
 
         } catch (SQLException e) {
-            throw new RuntimeException("Error finding bills by type: " + e.getMessage(), e);
+            throw new RuntimeException("Error archiving bills: " + e.getMessage(), e);
         }
-
-        return bills;
     }
 
-    @Override
-    public List<Bill> findByDateAndType(LocalDate date, Bill.TransactionType type) {
-        String sql = "SELECT * FROM bills WHERE DATE(bill_date) = ? AND transaction_type = ? ORDER BY serial_number DESC";
-        List<Bill> bills = new ArrayList<>();
-
-        try (Connection conn = dbManager.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+    /**
+     * Splits a partition for every year of the bills about to be archived off
+     * the catch-all p_future partition. Years at or below the highest existing
+     * partition are already covered by it or a lower one.
+     */
+    private void addArchivePartitions(Timestamp cutoff) {
+        String yearsSql = "SELECT DISTINCT YEAR(bill_date) FROM bills WHERE bill_date < ? ORDER BY 1";
+        String partitionsSql = "SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'bills_archive'";
+
+        // ALTER TABLE commits implicitly, so it must not run inside a unit of work
+        try (Connection conn = dbManager.getAutonomousConnection()) {
+            int highestYear = 0;
+            try (Statement stmt = conn.createStatement();
+                    ResultSet rs = stmt.executeQuery(partitionsSql)) {
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    if (name != null && name.matches("p\\d{4}")) {
+                        highestYear = Math.max(highestYear, Integer.parseInt(name.substring(1)));
+                    }
+                }
+            }
 
-            stmt.setDate(1, Date.valueOf(date));
-            stmt.setString(2, type.name());
-            ResultSet rs = stmt.executeQuery();
+            StringBuilder partitions = new StringBuilder();
+            try (PreparedStatement stmt = conn.prepareStatement(yearsSql)) {
+                stmt.setTimestamp(1, cutoff);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        int year = rs.getInt(1);
+                        if (year > highestYear) {
+                            partitions.append(String.format(
+                                    "PARTITION p%d VALUES LESS THAN (UNIX_TIMESTAMP('%d-01-01 00:00:00')), ",
+                                    year, year + 1));
+                        }
+                    }
+                }
+            }
+            if (partitions.length() == 0) {
+                return;
+            }
 
-            while (rs.next()) {
-                bills.add(mapResultSetToBill(rs, conn));
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE bills_archive REORGANIZE PARTITION p_future INTO (" + partitions +
+                        "PARTITION p_future VALUES LESS THAN MAXVALUE)");
             }
 
         } catch (SQLException e) {
-            throw new RuntimeException("Error finding bills by date and type: " + e.getMessage(), e);
+            throw new RuntimeException("Error adding archive partitions: " + e.getMessage(), e);
         }
+    }
 
-        return bills;
+    @Override
+    public List<Bill> findArchived() {
+        return findBills(ARCHIVE_TABLES, null, ParameterBinder.NONE, "Error finding archived bills");
     }
 
     @Override
-    public int getNextSerialNumber() {
-        String sql = "SELECT COALESCE(MAX(serial_number), 0) + 1 FROM bills";
+    public Stream<Bill> streamArchived() {
+        return streamBills(ARCHIVE_TABLES, null, ParameterBinder.NONE, "Error streaming archived bills");
+    }
+
+    /**
+     * The half-open day range lets MySQL prune bills_archive to the one
+     * partition holding that year.
+     */
+    @Override
+    public List<Bill> findArchivedByDate(LocalDate date) {
+        return findBills(ARCHIVE_TABLES, "b.bill_date >= ? AND b.bill_date < ?", stmt -> bindDay(stmt, date),
+                "Error finding archived bills by date");
+    }
+
+    /**
+     * Seeds the serial sequence once, so bills saved before the sequences
+     * table existed are never reused, archived ones included.
+     */
+    private int firstUnusedSerialNumber() {
+        String sql = "SELECT GREATEST(COALESCE((SELECT MAX(serial_number) FROM bills), 0), " +
+                "COALESCE((SELECT MAX(serial_number) FROM bills_archive), 0)) + 1";
 
         try (Connection conn = dbManager.getConnection();
                 Statement stmt = conn.createStatement();
@@ -195,47 +329,85 @@ public class MySQLBillRepository implements BillRepository {
         }
     }
 
-    private Bill mapResultSetToBill(ResultSet rs, Connection conn) throws SQLException {
-        int serialNumber = rs.getInt("serial_number");
-        LocalDateTime billDate = rs.getTimestamp("bill_date").toLocalDateTime();
-        double cashTendered = rs.getDouble("cash_tendered");
-        Bill.TransactionType transactionType = Bill.TransactionType.valueOf(rs.getString("transaction_type"));
-        String customerId = rs.getString("customer_id");
+    /**
+     * Loads the matching bills together with their items in one query. Each
+     * bill arrives as one row per item, newest bill first and items in
+     * insertion order, and consecutive rows of the same bill are stitched
+     * back together.
+     *
+     * @param condition WHERE condition on the bills table (alias b), or null for all bills
+     */
+    private List<Bill> findBills(String condition, ParameterBinder parameters, String errorMessage) {
+        return findBills(LIVE_TABLES, condition, parameters, errorMessage);
+    }
+
+    /**
+     * @param tables Bills (alias b) left joined with their items (alias i)
+     */
+    private List<Bill> findBills(String tables, String condition, ParameterBinder parameters,
+            String errorMessage) {
+        List<Bill> bills = new ArrayList<>();
 
-        Bill.Builder builder = new Bill.Builder()
-                .serialNumber(serialNumber)
-                .billDate(billDate)
-                .cashTendered(cashTendered)
-                .transactionType(transactionType)
-                .customerId(customerId);
+        try (Connection conn = dbManager.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(billsQuery(tables, condition))) {
+
+            parameters.bind(stmt);
+            try (ResultSet rs = stmt.executeQuery()) {
+                BillReader reader = new BillReader();
+                Bill bill;
+                while ((bill = reader.read(rs)) != null) {
+                    bills.add(bill);
+                }
+            }
 
-        List<Bill.BillItem> items = getBillItems(serialNumber, conn);
-        for (Bill.BillItem item : items) {
-            builder.addItem(item);
+        } catch (SQLException e) {
+            throw new RuntimeException(errorMessage + ": " + e.getMessage(), e);
         }
 
-        return builder.build();
+        return bills;
     }
 
-    private List<Bill.BillItem> getBillItems(int billSerialNumber, Connection conn) throws SQLException {
-        String sql = "SELECT * FROM bill_items WHERE bill_serial_number = ?";
-        List<Bill.BillItem> items = new ArrayList<>();
+    /**
+     * Same query as {@link #findBills(String, String, ParameterBinder, String)},
+     * but the bills are read from a server-side stream as the caller consumes
+     * them. The stream must be closed.
+     */
+    private Stream<Bill> streamBills(String tables, String condition, ParameterBinder parameters,
+            String errorMessage) {
+        return StreamingQuery.stream(dbManager, billsQuery(tables, condition), parameters, new BillReader(),
+                errorMessage);
+    }
 
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, billSerialNumber);
-            ResultSet rs = stmt.executeQuery();
+    private String billsQuery(String tables, String condition) {
+        return "SELECT " + BILL_MAPPER.columns("b") + ", " + ITEM_MAPPER.columns("i") +
+                " FROM " + tables +
+                (condition != null ? " WHERE " + condition : "") +
+                " ORDER BY b.serial_number DESC, i.id";
+    }
 
-            while (rs.next()) {
-                items.add(new Bill.BillItem(
-                        rs.getString("product_code"),
-                        rs.getString("product_name"),
-                        rs.getString("unit"),
-                        rs.getInt("quantity"),
-                        rs.getDouble("price"),
-                        rs.getDouble("discount_percentage")));
+    /**
+     * Stitches the rows of {@link #billsQuery}, one per item, back into bills.
+     * Consecutive rows of the same bill form one bill, so the reader only has
+     * to remember whether the row it stopped on is still unread.
+     */
+    private static class BillReader implements StreamingQuery.RowReader<Bill> {
+        private boolean onUnreadRow;
+
+        @Override
+        public Bill read(ResultSet rs) throws SQLException {
+            if (!onUnreadRow && !rs.next()) {
+                return null;
             }
+            int serialNumber = rs.getInt(1);
+            Bill.Builder builder = BILL_MAPPER.map(rs);
+            do {
+                // A bill without items joins to one row of NULL item columns
+                if (rs.getString(FIRST_ITEM_COLUMN) != null) {
+                    builder.addItem(ITEM_MAPPER.map(rs, FIRST_ITEM_COLUMN));
+                }
+                onUnreadRow = rs.next();
+            } while (onUnreadRow && rs.getInt(1) == serialNumber);
+            return builder.build();
         }
-
-        return items;
     }
 }
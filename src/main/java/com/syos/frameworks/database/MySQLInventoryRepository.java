@@ -4,14 +4,20 @@ import com.syos.entities.Inventory;
 import com.syos.usecases.repositories.InventoryRepository;
 
 import java.sql.*;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 /**
  * MySQL implementation of InventoryRepository.
+ * Inside a {@link MySQLUnitOfWork}, lookups by product code lock the row
+ * (SELECT ... FOR UPDATE) until the unit commits, since the caller is about
+ * to update it.
  */
 public class MySQLInventoryRepository implements InventoryRepository {
+    private static final RowMapper<Inventory> INVENTORY_MAPPER = new RowMapper<>(
+            "product_code, shelf_quantity, store_quantity, online_quantity",
+            MySQLInventoryRepository::mapInventory);
+
     private final DatabaseManager dbManager;
 
     public MySQLInventoryRepository() {
@@ -39,7 +45,8 @@ public class MySQLInventoryRepository implements InventoryRepository {
 
     @Override
     public Optional<Inventory> findByProductCode(String productCode) {
-        String sql = "SELECT * FROM inventory WHERE product_code = ?";
+        String sql = "SELECT " + INVENTORY_MAPPER.columns() + " FROM inventory WHERE product_code = ?"
+                + (MySQLUnitOfWork.inTransaction() ? " FOR UPDATE" : "");
 
         try (Connection conn = dbManager.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -48,7 +55,7 @@ public class MySQLInventoryRepository implements InventoryRepository {
             ResultSet rs = stmt.executeQuery();
 
             if (rs.next()) {
-                return Optional.of(mapResultSetToInventory(rs));
+                return Optional.of(INVENTORY_MAPPER.map(rs));
             }
             return Optional.empty();
 
@@ -59,22 +66,17 @@ public class MySQLInventoryRepository implements InventoryRepository {
 
     @Override
     public List<Inventory> findAll() {
-        String sql = "SELECT * FROM inventory ORDER BY product_code";
-        List<Inventory> inventories = new ArrayList<>();
+        String sql = "SELECT " + INVENTORY_MAPPER.columns() + " FROM inventory ORDER BY product_code";
 
         try (Connection conn = dbManager.getConnection();
                 Statement stmt = conn.createStatement();
                 ResultSet rs = stmt.executeQuery(sql)) {
 
-            while (rs.next()) {
-                inventories.add(mapResultSetToInventory(rs));
-            }
+            return INVENTORY_MAPPER.mapAll(rs);
 
         } catch (SQLException e) {
             throw new RuntimeException("Error finding all inventories: " + e.getMessage(), e);
         }
-
-        return inventories;
     }
 
     @Override
@@ -99,32 +101,85 @@ public class MySQLInventoryRepository implements InventoryRepository {
         }
     }
 
+    /**
+     * Decrements with a single conditional UPDATE; the affected-row count
+     * tells whether enough stock was available.
+     */
+    @Override
+    public boolean tryDecrement(String productCode, Inventory.Location location, int quantity) {
+        String column = columnFor(location);
+        String sql = "UPDATE inventory SET " + column + " = " + column + " - ? " +
+                "WHERE product_code = ? AND " + column + " >= ?";
+
+        try (Connection conn = dbManager.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, quantity);
+            stmt.setString(2, productCode);
+            stmt.setInt(3, quantity);
+
+            return stmt.executeUpdate() == 1;
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Error decrementing inventory: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void increment(String productCode, Inventory.Location location, int quantity) {
+        String column = columnFor(location);
+        String sql = "UPDATE inventory SET " + column + " = " + column + " + ? WHERE product_code = ?";
+
+        try (Connection conn = dbManager.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, quantity);
+            stmt.setString(2, productCode);
+
+            if (stmt.executeUpdate() == 0) {
+                throw new IllegalArgumentException("Inventory not found: " + productCode);
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Error incrementing inventory: " + e.getMessage(), e);
+        }
+    }
+
+    private String columnFor(Inventory.Location location) {
+        switch (location) {
+            case SHELF:
+                return "shelf_quantity";
+            case STORE:
+                return "store_quantity";
+            case ONLINE:
+                return "online_quantity";
+            default:
+                throw new IllegalArgumentException("Unknown location: " + location);
+        }
+    }
+
     @Override
     public List<Inventory> findBelowReorderLevel() {
-        String sql = "SELECT * FROM inventory WHERE (shelf_quantity + store_quantity + online_quantity) < 50 ORDER BY product_code";
-        List<Inventory> inventories = new ArrayList<>();
+        String sql = "SELECT " + INVENTORY_MAPPER.columns() + " FROM inventory " +
+                "WHERE (shelf_quantity + store_quantity + online_quantity) < 50 ORDER BY product_code";
 
         try (Connection conn = dbManager.getConnection();
                 Statement stmt = conn.createStatement();
                 ResultSet rs = stmt.executeQuery(sql)) {
 
-            while (rs.next()) {
-                inventories.add(mapResultSetToInventory(rs));
-            }
+            return INVENTORY_MAPPER.mapAll(rs);
 
         } catch (SQLException e) {
             throw new RuntimeException("Error finding low stock inventories: " + e.getMessage(), e);
         }
-
-        return inventories;
     }
 
-    private Inventory mapResultSetToInventory(ResultSet rs) throws SQLException {
-        Inventory inventory = new Inventory(rs.getString("product_code"));
+    private static Inventory mapInventory(ResultSet rs, int c) throws SQLException {
+        Inventory inventory = new Inventory(rs.getString(c));
 
-        int shelfQty = rs.getInt("shelf_quantity");
-        int storeQty = rs.getInt("store_quantity");
-        int onlineQty = rs.getInt("online_quantity");
+        int shelfQty = rs.getInt(c + 1);
+        int storeQty = rs.getInt(c + 2);
+        int onlineQty = rs.getInt(c + 3);
 
         if (shelfQty > 0)
             inventory.addToShelf(shelfQty);
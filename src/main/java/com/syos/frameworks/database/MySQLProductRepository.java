@@ -4,7 +4,6 @@ import com.syos.entities.Product;
 import com.syos.usecases.repositories.ProductRepository;
 
 import java.sql.*;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,6 +12,16 @@ import java.util.Optional;
  * Implements Repository Pattern with JDBC.
  */
 public class MySQLProductRepository implements ProductRepository {
+    private static final RowMapper<Product> PRODUCT_MAPPER = new RowMapper<>(
+            "code, name, unit, price, discount_percentage",
+            (rs, c) -> new Product.Builder()
+                    .code(rs.getString(c))
+                    .name(rs.getString(c + 1))
+                    .unit(rs.getString(c + 2))
+                    .price(rs.getDouble(c + 3))
+                    .discountPercentage(rs.getDouble(c + 4))
+                    .build());
+
     private final DatabaseManager dbManager;
 
     public MySQLProductRepository() {
@@ -44,7 +53,7 @@ public class MySQLProductRepository implements ProductRepository {
 
     @Override
     public Optional<Product> findByCode(String code) {
-        String sql = "SELECT * FROM products WHERE code = ?";
+        String sql = "SELECT " + PRODUCT_MAPPER.columns() + " FROM products WHERE code = ?";
 
         try (Connection conn = dbManager.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -53,7 +62,7 @@ public class MySQLProductRepository implements ProductRepository {
             ResultSet rs = stmt.executeQuery();
 
             if (rs.next()) {
-                return Optional.of(mapResultSetToProduct(rs));
+                return Optional.of(PRODUCT_MAPPER.map(rs));
             }
             return Optional.empty();
 
@@ -64,22 +73,17 @@ public class MySQLProductRepository implements ProductRepository {
 
     @Override
     public List<Product> findAll() {
-        String sql = "SELECT * FROM products ORDER BY code";
-        List<Product> products = new ArrayList<>();
+        String sql = "SELECT " + PRODUCT_MAPPER.columns() + " FROM products ORDER BY code";
 
         try (Connection conn = dbManager.getConnection();
                 Statement stmt = conn.createStatement();
                 ResultSet rs = stmt.executeQuery(sql)) {
 
-            while (rs.next()) {
-                products.add(mapResultSetToProduct(rs));
-            }
+            return PRODUCT_MAPPER.mapAll(rs);
 
         } catch (SQLException e) {
             throw new RuntimeException("Error finding all products: " + e.getMessage(), e);
         }
-
-        return products;
     }
 
     @Override
@@ -139,14 +143,4 @@ public class MySQLProductRepository implements ProductRepository {
             throw new RuntimeException("Error checking product existence: " + e.getMessage(), e);
         }
     }
-
-    private Product mapResultSetToProduct(ResultSet rs) throws SQLException {
-        return new Product.Builder()
-                .code(rs.getString("code"))
-                .name(rs.getString("name"))
-                .unit(rs.getString("unit"))
-                .price(rs.getDouble("price"))
-                .discountPercentage(rs.getDouble("discount_percentage"))
-                .build();
-    }
 }
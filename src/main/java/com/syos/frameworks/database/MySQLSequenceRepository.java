@@ -0,0 +1,59 @@
+package com.syos.frameworks.database;
+
+import com.syos.usecases.repositories.SequenceRepository;
+
+import java.sql.*;
+
+/**
+ * MySQL implementation of SequenceRepository.
+ * A block is reserved in one short transaction that locks the sequence row,
+ * so tills sharing the database never reserve overlapping blocks. It always
+ * commits on its own connection: a block handed out must stay reserved even if
+ * the sale that needed it rolls back.
+ */
+public class MySQLSequenceRepository implements SequenceRepository {
+    private final DatabaseManager dbManager;
+
+    public MySQLSequenceRepository() {
+        this.dbManager = DatabaseManager.getInstance();
+    }
+
+    @Override
+    public int reserveBlock(String sequenceName, int blockSize, int minimumValue) {
+        String insertSql = "INSERT IGNORE INTO sequences (name, next_value) VALUES (?, ?)";
+        String selectSql = "SELECT next_value FROM sequences WHERE name = ? FOR UPDATE";
+        String updateSql = "UPDATE sequences SET next_value = ? WHERE name = ?";
+
+        try (Connection conn = dbManager.getAutonomousConnection()) {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement insertStmt = conn.prepareStatement(insertSql);
+                    PreparedStatement selectStmt = conn.prepareStatement(selectSql);
+                    PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
+                insertStmt.setString(1, sequenceName);
+                insertStmt.setInt(2, minimumValue);
+                insertStmt.executeUpdate();
+
+                selectStmt.setString(1, sequenceName);
+                ResultSet rs = selectStmt.executeQuery();
+                if (!rs.next()) {
+                    throw new SQLException("Sequence " + sequenceName + " not found");
+                }
+                int start = Math.max(rs.getInt(1), minimumValue);
+
+                updateStmt.setInt(1, start + blockSize);
+                updateStmt.setString(2, sequenceName);
+                updateStmt.executeUpdate();
+
+                conn.commit();
+                return start;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Error reserving sequence block: " + e.getMessage(), e);
+        }
+    }
+}
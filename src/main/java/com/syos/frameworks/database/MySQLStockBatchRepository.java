@@ -1,18 +1,26 @@
 package com.syos.frameworks.database;
 
 import com.syos.entities.StockBatch;
+import com.syos.usecases.strategies.BatchOrder;
 import com.syos.usecases.repositories.StockBatchRepository;
 
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * MySQL implementation of StockBatchRepository.
  */
 public class MySQLStockBatchRepository implements StockBatchRepository {
+    private static final int DEPLETION_PAGE_SIZE = 8;
+    private static final RowMapper<StockBatch> STOCK_BATCH_MAPPER = new RowMapper<>(
+            "batch_id, product_code, purchase_date, quantity, expiry_date",
+            MySQLStockBatchRepository::mapStockBatch);
+
     private final DatabaseManager dbManager;
 
     public MySQLStockBatchRepository() {
@@ -41,7 +49,7 @@ public class MySQLStockBatchRepository implements StockBatchRepository {
 
     @Override
     public Optional<StockBatch> findById(String batchId) {
-        String sql = "SELECT * FROM stock_batches WHERE batch_id = ?";
+        String sql = "SELECT " + STOCK_BATCH_MAPPER.columns() + " FROM stock_batches WHERE batch_id = ?";
 
         try (Connection conn = dbManager.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -50,7 +58,7 @@ public class MySQLStockBatchRepository implements StockBatchRepository {
             ResultSet rs = stmt.executeQuery();
 
             if (rs.next()) {
-                return Optional.of(mapResultSetToStockBatch(rs));
+                return Optional.of(STOCK_BATCH_MAPPER.map(rs));
             }
             return Optional.empty();
 
@@ -61,44 +69,42 @@ public class MySQLStockBatchRepository implements StockBatchRepository {
 
     @Override
     public List<StockBatch> findByProductCode(String productCode) {
-        String sql = "SELECT * FROM stock_batches WHERE product_code = ? ORDER BY purchase_date";
-        List<StockBatch> batches = new ArrayList<>();
+        String sql = "SELECT " + STOCK_BATCH_MAPPER.columns() + " FROM stock_batches " +
+                "WHERE product_code = ? ORDER BY purchase_date";
 
         try (Connection conn = dbManager.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, productCode);
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                batches.add(mapResultSetToStockBatch(rs));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return STOCK_BATCH_MAPPER.mapAll(rs);
             }
 
         } catch (SQLException e) {
             throw new RuntimeException("Error finding stock batches: " + e.getMessage(), e);
         }
-
-        return batches;
     }
 
     @Override
     public List<StockBatch> findAll() {
-        String sql = "SELECT * FROM stock_batches ORDER BY product_code, purchase_date";
-        List<StockBatch> batches = new ArrayList<>();
+        String sql = "SELECT " + STOCK_BATCH_MAPPER.columns() + " FROM stock_batches ORDER BY product_code, purchase_date";
 
         try (Connection conn = dbManager.getConnection();
                 Statement stmt = conn.createStatement();
                 ResultSet rs = stmt.executeQuery(sql)) {
 
-            while (rs.next()) {
-                batches.add(mapResultSetToStockBatch(rs));
-            }
+            return STOCK_BATCH_MAPPER.mapAll(rs);
 
         } catch (SQLException e) {
             throw new RuntimeException("Error finding all stock batches: " + e.getMessage(), e);
         }
+    }
 
-        return batches;
+    @Override
+    public Stream<StockBatch> streamAll() {
+        return StreamingQuery.stream(dbManager,
+                "SELECT " + STOCK_BATCH_MAPPER.columns() + " FROM stock_batches ORDER BY product_code, purchase_date",
+                ParameterBinder.NONE, STOCK_BATCH_MAPPER.reader(), "Error streaming stock batches");
     }
 
     @Override
@@ -121,6 +127,143 @@ public class MySQLStockBatchRepository implements StockBatchRepository {
         }
     }
 
+    /**
+     * Sends every quantity change as one JDBC batch in one transaction. With
+     * rewriteBatchedStatements the driver folds the batch into a single round
+     * trip.
+     */
+    @Override
+    public void updateAll(Collection<StockBatch> stockBatches) {
+        if (stockBatches.isEmpty()) {
+            return;
+        }
+
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                updateQuantities(conn, stockBatches);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Error updating stock batches: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Selects only the live batches, in pages and in the given order, locking
+     * each page with FOR UPDATE SKIP LOCKED so concurrent sales of the same
+     * product draw from different batches instead of queueing. Only if the
+     * unlocked batches cannot cover the quantity does it wait for the locked
+     * ones. The in_stock column and its indexes keep depleted batches out of
+     * the scan.
+     */
+    @Override
+    public List<StockBatch> depleteStock(String productCode, int quantity, BatchOrder order) {
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                List<StockBatch> depleted = lockLiveBatches(conn, productCode, quantity, order, true);
+                if (depleted == null) {
+                    depleted = lockLiveBatches(conn, productCode, quantity, order, false);
+                }
+                if (depleted == null) {
+                    conn.rollback();
+                    return List.of();
+                }
+                updateQuantities(conn, depleted);
+                conn.commit();
+                return depleted;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Error depleting stock batches: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Locks live batches page by page until they cover the quantity, and
+     * reduces them in memory.
+     *
+     * @return the reduced batches, or null if the live batches hold too little
+     */
+    private List<StockBatch> lockLiveBatches(Connection conn, String productCode, int quantity,
+            BatchOrder order, boolean skipLocked) throws SQLException {
+        String sql = "SELECT " + STOCK_BATCH_MAPPER.columns() + " FROM stock_batches " +
+                "WHERE product_code = ? AND in_stock = TRUE AND expiry_date >= CURRENT_DATE " +
+                "ORDER BY " + orderByFor(order) + " LIMIT ? OFFSET ? FOR UPDATE" +
+                (skipLocked ? " SKIP LOCKED" : "");
+        List<StockBatch> depleted = new ArrayList<>();
+        int remaining = quantity;
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int offset = 0;
+            while (remaining > 0) {
+                stmt.setString(1, productCode);
+                stmt.setInt(2, DEPLETION_PAGE_SIZE);
+                stmt.setInt(3, offset);
+
+                int rows = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next() && remaining > 0) {
+                        StockBatch batch = STOCK_BATCH_MAPPER.map(rs);
+                        int taken = Math.min(remaining, batch.getQuantity());
+                        batch.reduceQuantity(taken);
+                        depleted.add(batch);
+                        remaining -= taken;
+                        rows++;
+                    }
+                }
+                if (remaining > 0 && rows < DEPLETION_PAGE_SIZE) {
+                    return null;
+                }
+                offset += rows;
+            }
+        }
+        return depleted;
+    }
+
+    private String orderByFor(BatchOrder order) {
+        switch (order) {
+            case OLDEST_FIRST:
+                return "purchase_date, batch_id";
+            case EXPIRY_FIRST:
+                return "expiry_date, purchase_date, batch_id";
+            default:
+                throw new IllegalArgumentException("Unknown batch order: " + order);
+        }
+    }
+
+    private void updateQuantities(Connection conn, Collection<StockBatch> stockBatches) throws SQLException {
+        String sql = "UPDATE stock_batches SET quantity = ? WHERE batch_id = ?";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            List<String> batchIds = new ArrayList<>(stockBatches.size());
+            for (StockBatch stockBatch : stockBatches) {
+                stmt.setInt(1, stockBatch.getQuantity());
+                stmt.setString(2, stockBatch.getBatchId());
+                stmt.addBatch();
+                batchIds.add(stockBatch.getBatchId());
+            }
+
+            int[] rowsAffected = stmt.executeBatch();
+            for (int i = 0; i < rowsAffected.length; i++) {
+                // A rewritten batch reports SUCCESS_NO_INFO instead of counts
+                if (rowsAffected[i] == 0) {
+                    throw new IllegalArgumentException("Stock batch not found: " + batchIds.get(i));
+                }
+            }
+        }
+    }
+
     @Override
     public void delete(String batchId) {
         String sql = "DELETE FROM stock_batches WHERE batch_id = ?";
@@ -136,14 +279,87 @@ public class MySQLStockBatchRepository implements StockBatchRepository {
         }
     }
 
-    private StockBatch mapResultSetToStockBatch(ResultSet rs) throws SQLException {
-        String batchId = rs.getString("batch_id");
-        String productCode = rs.getString("product_code");
-        LocalDate purchaseDate = rs.getDate("purchase_date").toLocalDate();
-        int quantity = rs.getInt("quantity");
-        LocalDate expiryDate = rs.getDate("expiry_date").toLocalDate();
+    /**
+     * Copies the depleted batches to stock_batches_archive and deletes them
+     * in one transaction. Both statements find the batches through the
+     * in_stock column of the live batch indexes.
+     */
+    @Override
+    public int archiveDepleted() {
+        String copySql = "INSERT INTO stock_batches_archive (" + STOCK_BATCH_MAPPER.columns() + ") " +
+                "SELECT " + STOCK_BATCH_MAPPER.columns() + " FROM stock_batches WHERE in_stock = FALSE";
+        String deleteSql = "DELETE FROM stock_batches WHERE in_stock = FALSE";
+
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try (Statement stmt = conn.createStatement()) {
+                int archived = stmt.executeUpdate(copySql);
+                stmt.executeUpdate(deleteSql);
+                conn.commit();
+                return archived;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Error archiving stock batches: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<StockBatch> findArchived() {
+        String sql = "SELECT " + STOCK_BATCH_MAPPER.columns() + " FROM stock_batches_archive " +
+                "ORDER BY product_code, purchase_date";
+
+        try (Connection conn = dbManager.getConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+
+            return STOCK_BATCH_MAPPER.mapAll(rs);
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Error finding archived stock batches: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Stream<StockBatch> streamArchived() {
+        return StreamingQuery.stream(dbManager,
+                "SELECT " + STOCK_BATCH_MAPPER.columns() + " FROM stock_batches_archive " +
+                        "ORDER BY product_code, purchase_date",
+                ParameterBinder.NONE, STOCK_BATCH_MAPPER.reader(), "Error streaming archived stock batches");
+    }
+
+    /**
+     * Streams the rows from the server, so the scan holds one row in memory
+     * at a time however many batches there are.
+     */
+    @Override
+    public void forEachBatch(BatchVisitor visitor) {
+        String sql = "SELECT product_code, purchase_date, quantity, expiry_date FROM stock_batches ORDER BY product_code, purchase_date";
+
+        StreamingQuery.forEachRow(dbManager, sql, ParameterBinder.NONE, rs -> visitor.visit(rs.getString(1),
+                (int) rs.getDate(2).toLocalDate().toEpochDay(),
+                rs.getInt(3),
+                (int) rs.getDate(4).toLocalDate().toEpochDay()), "Error scanning stock batches");
+    }
 
-        // Use constructor with batch_id to preserve the database ID
-        return new StockBatch(batchId, productCode, purchaseDate, quantity, expiryDate);
+    private static StockBatch mapStockBatch(ResultSet rs, int c) throws SQLException {
+        String batchId = rs.getString(c);
+        String productCode = rs.getString(c + 1);
+        LocalDate purchaseDate = rs.getDate(c + 2).toLocalDate();
+        int quantity = rs.getInt(c + 3);
+        LocalDate expiryDate = rs.getDate(c + 4).toLocalDate();
+
+        // Use constructor with batch_id to preserve the database ID. A depleted
+        // batch cannot be constructed with quantity 0, so it is built with one
+        // unit and then reduced.
+        StockBatch batch = new StockBatch(batchId, productCode, purchaseDate, Math.max(quantity, 1), expiryDate);
+        if (quantity == 0) {
+            batch.reduceQuantity(1);
+        }
+        return batch;
     }
 }
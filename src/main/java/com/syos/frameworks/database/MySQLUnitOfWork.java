@@ -0,0 +1,112 @@
+package com.syos.frameworks.database;
+
+import com.syos.usecases.UnitOfWork;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * MySQL implementation of UnitOfWork.
+ * The work runs on one pooled connection bound to the current thread, so
+ * every repository call it makes shares a single transaction that commits
+ * once at the end. While it is bound, {@link DatabaseManager#getConnection()}
+ * hands out that connection, inventory reads lock their rows with
+ * SELECT ... FOR UPDATE, and the repositories' own commits, rollbacks and
+ * closes are deferred to the unit of work.
+ */
+public class MySQLUnitOfWork implements UnitOfWork {
+    private static final ThreadLocal<Connection> CURRENT = new ThreadLocal<>();
+    private final DatabaseManager dbManager;
+
+    public MySQLUnitOfWork() {
+        this.dbManager = DatabaseManager.getInstance();
+    }
+
+    @Override
+    public <T, E extends Exception> T execute(Work<T, E> work) throws E {
+        if (CURRENT.get() != null) {
+            return work.run(); // Joins the enclosing unit of work
+        }
+
+        Connection conn = begin();
+        CURRENT.set(conn);
+        try {
+            T result = work.run();
+            conn.commit();
+            return result;
+        } catch (SQLException e) {
+            rollback(conn);
+            throw new RuntimeException("Error committing transaction: " + e.getMessage(), e);
+        } catch (Exception | Error e) {
+            rollback(conn);
+            throw e;
+        } finally {
+            CURRENT.remove();
+            close(conn);
+        }
+    }
+
+    /**
+     * True if the current thread is running inside a unit of work.
+     */
+    static boolean inTransaction() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Returns the current thread's transaction connection, wrapped so that the
+     * repositories' commit, rollback, setAutoCommit and close calls are no-ops,
+     * or null outside a unit of work.
+     */
+    static Connection currentConnection() {
+        Connection conn = CURRENT.get();
+        if (conn == null) {
+            return null;
+        }
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                        case "commit":
+                        case "rollback":
+                        case "setAutoCommit":
+                            return null;
+                        default:
+                            try {
+                                return method.invoke(conn, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                });
+    }
+
+    private Connection begin() {
+        try {
+            Connection conn = dbManager.getAutonomousConnection();
+            conn.setAutoCommit(false);
+            return conn;
+        } catch (SQLException e) {
+            throw new RuntimeException("Error starting transaction: " + e.getMessage(), e);
+        }
+    }
+
+    private void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            System.err.println("Failed to roll back transaction: " + e.getMessage());
+        }
+    }
+
+    private void close(Connection conn) {
+        try {
+            conn.setAutoCommit(true);
+            conn.close();
+        } catch (SQLException e) {
+            System.err.println("Failed to release transaction connection: " + e.getMessage());
+        }
+    }
+}
@@ -4,8 +4,6 @@ import com.syos.entities.User;
 import com.syos.usecases.repositories.UserRepository;
 
 import java.sql.*;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,6 +11,16 @@ import java.util.Optional;
  * MySQL implementation of UserRepository.
  */
 public class MySQLUserRepository implements UserRepository {
+    private static final RowMapper<User> USER_MAPPER = new RowMapper<>(
+            "user_id, name, email, password_hash, address, registration_date",
+            (rs, c) -> new User(
+                    rs.getString(c),
+                    rs.getString(c + 1),
+                    rs.getString(c + 2),
+                    rs.getString(c + 3),
+                    rs.getString(c + 4),
+                    rs.getTimestamp(c + 5).toLocalDateTime()));
+
     private final DatabaseManager dbManager;
 
     public MySQLUserRepository() {
@@ -45,7 +53,7 @@ public class MySQLUserRepository implements UserRepository {
 
     @Override
     public Optional<User> findById(String userId) {
-        String sql = "SELECT * FROM users WHERE user_id = ?";
+        String sql = "SELECT " + USER_MAPPER.columns() + " FROM users WHERE user_id = ?";
 
         try (Connection conn = dbManager.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -54,7 +62,7 @@ public class MySQLUserRepository implements UserRepository {
             ResultSet rs = stmt.executeQuery();
 
             if (rs.next()) {
-                return Optional.of(mapResultSetToUser(rs));
+                return Optional.of(USER_MAPPER.map(rs));
             }
             return Optional.empty();
 
@@ -65,7 +73,7 @@ public class MySQLUserRepository implements UserRepository {
 
     @Override
     public Optional<User> findByEmail(String email) {
-        String sql = "SELECT * FROM users WHERE email = ?";
+        String sql = "SELECT " + USER_MAPPER.columns() + " FROM users WHERE email = ?";
 
         try (Connection conn = dbManager.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -74,7 +82,7 @@ public class MySQLUserRepository implements UserRepository {
             ResultSet rs = stmt.executeQuery();
 
             if (rs.next()) {
-                return Optional.of(mapResultSetToUser(rs));
+                return Optional.of(USER_MAPPER.map(rs));
             }
             return Optional.empty();
 
@@ -85,22 +93,17 @@ public class MySQLUserRepository implements UserRepository {
 
     @Override
     public List<User> findAll() {
-        String sql = "SELECT * FROM users ORDER BY registration_date DESC";
-        List<User> users = new ArrayList<>();
+        String sql = "SELECT " + USER_MAPPER.columns() + " FROM users ORDER BY registration_date DESC";
 
         try (Connection conn = dbManager.getConnection();
                 Statement stmt = conn.createStatement();
                 ResultSet rs = stmt.executeQuery(sql)) {
 
-            while (rs.next()) {
-                users.add(mapResultSetToUser(rs));
-            }
+            return USER_MAPPER.mapAll(rs);
 
         } catch (SQLException e) {
             throw new RuntimeException("Error finding all users: " + e.getMessage(), e);
         }
-
-        return users;
     }
 
     @Override
@@ -122,14 +125,4 @@ public class MySQLUserRepository implements UserRepository {
             throw new RuntimeException("Error checking user existence: " + e.getMessage(), e);
         }
     }
-
-    private User mapResultSetToUser(ResultSet rs) throws SQLException {
-        return new User(
-                rs.getString("user_id"),
-                rs.getString("name"),
-                rs.getString("email"),
-                rs.getString("password_hash"),
-                rs.getString("address"),
-                rs.getTimestamp("registration_date").toLocalDateTime());
-    }
 }
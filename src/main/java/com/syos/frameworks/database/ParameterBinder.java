@@ -0,0 +1,15 @@
+package com.syos.frameworks.database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Sets the parameters of a query's WHERE condition.
+ */
+@FunctionalInterface
+interface ParameterBinder {
+    ParameterBinder NONE = stmt -> {
+    };
+
+    void bind(PreparedStatement stmt) throws SQLException;
+}
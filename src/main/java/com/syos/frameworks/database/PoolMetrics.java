@@ -0,0 +1,44 @@
+package com.syos.frameworks.database;
+
+/**
+ * Live statistics of the database connection pool, e.g. for sizing the pool
+ * to the number of tills. Obtained from {@link DatabaseManager#getPoolMetrics()}.
+ */
+public interface PoolMetrics {
+    /**
+     * Connections currently lent out.
+     */
+    int getActiveConnections();
+
+    /**
+     * Open connections waiting in the pool.
+     */
+    int getIdleConnections();
+
+    int getTotalConnections();
+
+    /**
+     * Threads currently waiting for a connection.
+     */
+    int getPendingThreads();
+
+    /**
+     * Connections handed out since the pool started.
+     */
+    long getConnectionsAcquired();
+
+    /**
+     * Average time a caller waited for a connection.
+     */
+    double getAverageWaitMillis();
+
+    /**
+     * Longest time a caller waited for a connection.
+     */
+    double getMaxWaitMillis();
+
+    /**
+     * Requests that gave up after the connection timeout.
+     */
+    long getConnectionTimeouts();
+}
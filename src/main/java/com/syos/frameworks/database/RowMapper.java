@@ -0,0 +1,92 @@
+package com.syos.frameworks.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Maps result set rows to objects by column position. Each mapper carries the
+ * column list its statements select, so the positions it reads always match
+ * the SELECT, and reading a value costs no column-name lookup. Selecting the
+ * columns explicitly also keeps columns such as created_at off the wire.
+ *
+ * @param <T> Type of object built from a row
+ */
+final class RowMapper<T> {
+    private final List<String> columns;
+    private final Mapping<T> mapping;
+
+    /**
+     * @param columns Comma-separated columns, in the order the mapping reads them
+     */
+    RowMapper(String columns, Mapping<T> mapping) {
+        this.columns = Arrays.stream(columns.split(","))
+                .map(String::trim)
+                .toList();
+        this.mapping = mapping;
+    }
+
+    /**
+     * The column list to select, e.g. "code, name, unit".
+     */
+    String columns() {
+        return String.join(", ", columns);
+    }
+
+    /**
+     * The column list qualified with a table alias, e.g. "p.code, p.name".
+     */
+    String columns(String alias) {
+        return columns.stream()
+                .map(column -> alias + "." + column)
+                .collect(Collectors.joining(", "));
+    }
+
+    int columnCount() {
+        return columns.size();
+    }
+
+    /**
+     * Maps the current row, whose first columns are this mapper's.
+     */
+    T map(ResultSet rs) throws SQLException {
+        return mapping.map(rs, 1);
+    }
+
+    /**
+     * Maps the current row, where this mapper's columns start at the given
+     * position, e.g. after another table's columns in a join.
+     */
+    T map(ResultSet rs, int firstColumn) throws SQLException {
+        return mapping.map(rs, firstColumn);
+    }
+
+    /**
+     * Maps every remaining row.
+     */
+    List<T> mapAll(ResultSet rs) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        while (rs.next()) {
+            rows.add(map(rs));
+        }
+        return rows;
+    }
+
+    /**
+     * Reads one row per element from a {@link StreamingQuery}.
+     */
+    StreamingQuery.RowReader<T> reader() {
+        return rs -> rs.next() ? map(rs) : null;
+    }
+
+    /**
+     * Builds an object from the columns starting at the given position.
+     */
+    @FunctionalInterface
+    interface Mapping<T> {
+        T map(ResultSet rs, int first) throws SQLException;
+    }
+}
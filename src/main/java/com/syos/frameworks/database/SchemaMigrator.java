@@ -0,0 +1,274 @@
+package com.syos.frameworks.database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Versioned schema migrations for the MySQL database.
+ * Applied versions are recorded in the schema_version table; on startup every
+ * migration newer than the recorded version runs once, in order.
+ * Databases created before migrations existed already have the tables, so
+ * version 1 only creates what is missing.
+ */
+public class SchemaMigrator {
+    // Duplicate key name, raised when an index from a half-applied migration exists
+    private static final int ER_DUP_KEYNAME = 1061;
+    // Duplicate column name, raised when a column from a half-applied migration exists
+    private static final int ER_DUP_FIELDNAME = 1060;
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Create tables", SchemaMigrator::createTables),
+            new Migration(2, "Add indexes for repository finders", SchemaMigrator::createFinderIndexes),
+            new Migration(3, "Index live stock batches", SchemaMigrator::createLiveBatchIndexes),
+            new Migration(4, "Create archive tables", SchemaMigrator::createArchiveTables));
+
+    /**
+     * Applies every pending migration.
+     *
+     * @return the schema version after migrating
+     */
+    public int migrate(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INT PRIMARY KEY," +
+                    "description VARCHAR(255) NOT NULL," +
+                    "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                    ")");
+
+            int current = currentVersion(stmt);
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= current) {
+                    continue;
+                }
+                migration.step.apply(stmt);
+                stmt.executeUpdate("INSERT INTO schema_version (version, description) VALUES (" +
+                        migration.version + ", '" + migration.description + "')");
+                current = migration.version;
+                System.out.println("✓ Applied schema migration " + migration.version + ": " + migration.description);
+            }
+            return current;
+        }
+    }
+
+    private int currentVersion(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void createTables(Statement stmt) throws SQLException {
+        // Create products table
+        stmt.execute("CREATE TABLE IF NOT EXISTS products (" +
+                "code VARCHAR(50) PRIMARY KEY," +
+                "name VARCHAR(255) NOT NULL," +
+                "unit VARCHAR(20) NOT NULL DEFAULT 'pcs'," +
+                "price DECIMAL(10, 2) NOT NULL," +
+                "discount_percentage DECIMAL(5, 2) DEFAULT 0.0," +
+                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ")");
+
+        // Create inventory table
+        stmt.execute("CREATE TABLE IF NOT EXISTS inventory (" +
+                "product_code VARCHAR(50) PRIMARY KEY," +
+                "shelf_quantity INT DEFAULT 0," +
+                "store_quantity INT DEFAULT 0," +
+                "online_quantity INT DEFAULT 0," +
+                "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP," +
+                "FOREIGN KEY (product_code) REFERENCES products(code) ON DELETE CASCADE" +
+                ")");
+
+        // Create stock_batches table
+        stmt.execute("CREATE TABLE IF NOT EXISTS stock_batches (" +
+                "batch_id VARCHAR(255) PRIMARY KEY," +
+                "product_code VARCHAR(50) NOT NULL," +
+                "purchase_date DATE NOT NULL," +
+                "quantity INT NOT NULL," +
+                "expiry_date DATE NOT NULL," +
+                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "FOREIGN KEY (product_code) REFERENCES products(code) ON DELETE CASCADE" +
+                ")");
+
+        // Create users table
+        stmt.execute("CREATE TABLE IF NOT EXISTS users (" +
+                "user_id VARCHAR(255) PRIMARY KEY," +
+                "name VARCHAR(255) NOT NULL," +
+                "email VARCHAR(255) UNIQUE NOT NULL," +
+                "password_hash VARCHAR(255) NOT NULL," +
+                "address TEXT," +
+                "registration_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ")");
+
+        // Create bills table
+        stmt.execute("CREATE TABLE IF NOT EXISTS bills (" +
+                "serial_number INT PRIMARY KEY AUTO_INCREMENT," +
+                "bill_date TIMESTAMP NOT NULL," +
+                "subtotal DECIMAL(10, 2) NOT NULL," +
+                "discount DECIMAL(10, 2) NOT NULL," +
+                "total DECIMAL(10, 2) NOT NULL," +
+                "cash_tendered DECIMAL(10, 2) NOT NULL," +
+                "change_amount DECIMAL(10, 2) NOT NULL," +
+                "transaction_type VARCHAR(20) NOT NULL," +
+                "customer_id VARCHAR(255)," +
+                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "FOREIGN KEY (customer_id) REFERENCES users(user_id) ON DELETE SET NULL" +
+                ")");
+
+        // Create bill_items table
+        stmt.execute("CREATE TABLE IF NOT EXISTS bill_items (" +
+                "id INT PRIMARY KEY AUTO_INCREMENT," +
+                "bill_serial_number INT NOT NULL," +
+                "product_code VARCHAR(50) NOT NULL," +
+                "product_name VARCHAR(255) NOT NULL," +
+                "unit VARCHAR(20) NOT NULL DEFAULT 'pcs'," +
+                "quantity INT NOT NULL," +
+                "price DECIMAL(10, 2) NOT NULL," +
+                "discount_percentage DECIMAL(5, 2) NOT NULL," +
+                "FOREIGN KEY (bill_serial_number) REFERENCES bills(serial_number) ON DELETE CASCADE," +
+                "FOREIGN KEY (product_code) REFERENCES products(code) ON DELETE RESTRICT" +
+                ")");
+
+        // Create sequences table (blocks of bill serial numbers reserved per till)
+        stmt.execute("CREATE TABLE IF NOT EXISTS sequences (" +
+                "name VARCHAR(50) PRIMARY KEY," +
+                "next_value INT NOT NULL" +
+                ")");
+
+        // Add unit column to existing tables if not present (for backward
+        // compatibility)
+        try {
+            stmt.execute("ALTER TABLE products ADD COLUMN unit VARCHAR(20) NOT NULL DEFAULT 'pcs'");
+            System.out.println("✓ Added 'unit' column to products table");
+        } catch (SQLException e) {
+            // Column already exists, ignore
+        }
+
+        try {
+            stmt.execute("ALTER TABLE bill_items ADD COLUMN unit VARCHAR(20) NOT NULL DEFAULT 'pcs'");
+            System.out.println("✓ Added 'unit' column to bill_items table");
+        } catch (SQLException e) {
+            // Column already exists, ignore
+        }
+    }
+
+    /**
+     * Indexes backing the finders of the MySQL repositories. Primary keys and
+     * the unique users.email key already cover the lookups by ID, code and
+     * email. The stock batch index also covers the columns of
+     * {@link MySQLStockBatchRepository#forEachBatch}.
+     */
+    private static void createFinderIndexes(Statement stmt) throws SQLException {
+        // findByDate / findByDateAndType (half-open bill_date ranges)
+        createIndex(stmt, "CREATE INDEX idx_bills_date_type ON bills (bill_date, transaction_type)");
+        // findByTransactionType, ordered by the primary key
+        createIndex(stmt, "CREATE INDEX idx_bills_type ON bills (transaction_type)");
+        // Items joined to their bills
+        createIndex(stmt, "CREATE INDEX idx_bill_items_bill ON bill_items (bill_serial_number, id)");
+        // findByProductCode and the scans ordered by product and purchase date
+        createIndex(stmt, "CREATE INDEX idx_stock_batches_product_purchase " +
+                "ON stock_batches (product_code, purchase_date, quantity, expiry_date)");
+        // findAll, ordered by registration date
+        createIndex(stmt, "CREATE INDEX idx_users_registration ON users (registration_date)");
+    }
+
+    /**
+     * Indexes for {@link MySQLStockBatchRepository#depleteStock}. MySQL has no
+     * partial indexes, so the stored in_stock column leads each index after
+     * the product code; depleted batches then sort into a range the
+     * depletion query never reads, however many of them accumulate.
+     */
+    private static void createLiveBatchIndexes(Statement stmt) throws SQLException {
+        try {
+            stmt.execute("ALTER TABLE stock_batches ADD COLUMN in_stock BOOLEAN AS (quantity > 0) STORED");
+        } catch (SQLException e) {
+            if (e.getErrorCode() != ER_DUP_FIELDNAME) {
+                throw e;
+            }
+        }
+        // BatchOrder.OLDEST_FIRST
+        createIndex(stmt, "CREATE INDEX idx_stock_batches_live_purchase " +
+                "ON stock_batches (product_code, in_stock, purchase_date, expiry_date)");
+        // BatchOrder.EXPIRY_FIRST
+        createIndex(stmt, "CREATE INDEX idx_stock_batches_live_expiry " +
+                "ON stock_batches (product_code, in_stock, expiry_date, purchase_date)");
+    }
+
+    /**
+     * Tables that old bills and depleted batches are moved to. bills_archive
+     * is range partitioned on bill_date, one partition per year, so queries
+     * for a day read one partition and a year can be dropped at once.
+     * Partitioned tables cannot take part in foreign keys, and a partitioned
+     * table's primary key must include bill_date. It starts with only the
+     * catch-all p_future partition; {@link MySQLBillRepository#archiveBefore}
+     * splits the yearly partitions off it as needed.
+     */
+    private static void createArchiveTables(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS bills_archive (" +
+                "serial_number INT NOT NULL," +
+                "bill_date TIMESTAMP NOT NULL," +
+                "subtotal DECIMAL(10, 2) NOT NULL," +
+                "discount DECIMAL(10, 2) NOT NULL," +
+                "total DECIMAL(10, 2) NOT NULL," +
+                "cash_tendered DECIMAL(10, 2) NOT NULL," +
+                "change_amount DECIMAL(10, 2) NOT NULL," +
+                "transaction_type VARCHAR(20) NOT NULL," +
+                "customer_id VARCHAR(255)," +
+                "created_at TIMESTAMP NULL," +
+                "PRIMARY KEY (serial_number, bill_date)," +
+                "INDEX idx_bills_archive_date_type (bill_date, transaction_type)" +
+                ") PARTITION BY RANGE (UNIX_TIMESTAMP(bill_date)) (" +
+                "PARTITION p_future VALUES LESS THAN MAXVALUE" +
+                ")");
+
+        stmt.execute("CREATE TABLE IF NOT EXISTS bill_items_archive (" +
+                "id INT PRIMARY KEY," +
+                "bill_serial_number INT NOT NULL," +
+                "product_code VARCHAR(50) NOT NULL," +
+                "product_name VARCHAR(255) NOT NULL," +
+                "unit VARCHAR(20) NOT NULL DEFAULT 'pcs'," +
+                "quantity INT NOT NULL," +
+                "price DECIMAL(10, 2) NOT NULL," +
+                "discount_percentage DECIMAL(5, 2) NOT NULL," +
+                "INDEX idx_bill_items_archive_bill (bill_serial_number, id)" +
+                ")");
+
+        stmt.execute("CREATE TABLE IF NOT EXISTS stock_batches_archive (" +
+                "batch_id VARCHAR(255) PRIMARY KEY," +
+                "product_code VARCHAR(50) NOT NULL," +
+                "purchase_date DATE NOT NULL," +
+                "quantity INT NOT NULL," +
+                "expiry_date DATE NOT NULL," +
+                "archived_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "INDEX idx_stock_batches_archive_product (product_code, purchase_date)" +
+                ")");
+    }
+
+    private static void createIndex(Statement stmt, String sql) throws SQLException {
+        try {
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            if (e.getErrorCode() != ER_DUP_KEYNAME) {
+                throw e;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface MigrationStep {
+        void apply(Statement stmt) throws SQLException;
+    }
+
+    private static class Migration {
+        final int version;
+        final String description;
+        final MigrationStep step;
+
+        Migration(int version, String description, MigrationStep step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.syos.frameworks.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs a query whose rows are read one at a time while the caller consumes
+ * them, instead of being collected into a list first. A forward-only,
+ * read-only statement with a fetch size of Integer.MIN_VALUE makes the MySQL
+ * driver stream the rows from the server rather than buffer the whole result
+ * client-side.
+ *
+ * A streaming result set occupies its connection until it is closed, so
+ * inside a {@link MySQLUnitOfWork}, whose connection the other repository
+ * calls share, the result is buffered as usual. The statement and connection
+ * are released as soon as the rows run out, when reading fails, or when the
+ * stream is closed, whichever comes first.
+ */
+final class StreamingQuery<T> implements AutoCloseable {
+    private final Connection conn;
+    private final PreparedStatement stmt;
+    private final ResultSet rs;
+    private final RowReader<T> reader;
+    private final String errorMessage;
+    private boolean closed;
+
+    private StreamingQuery(Connection conn, PreparedStatement stmt, ResultSet rs, RowReader<T> reader,
+            String errorMessage) {
+        this.conn = conn;
+        this.stmt = stmt;
+        this.rs = rs;
+        this.reader = reader;
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * Executes the query and returns its elements as a stream that must be
+     * closed, typically with try-with-resources.
+     */
+    static <T> Stream<T> stream(DatabaseManager dbManager, String sql, ParameterBinder parameters,
+            RowReader<T> reader, String errorMessage) {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = dbManager.getConnection();
+            stmt = prepare(conn, sql);
+            parameters.bind(stmt);
+            ResultSet rs = stmt.executeQuery();
+
+            StreamingQuery<T> query = new StreamingQuery<>(conn, stmt, rs, reader, errorMessage);
+            return StreamSupport.stream(query.spliterator(), false).onClose(query::close);
+
+        } catch (SQLException e) {
+            closeQuietly(stmt);
+            closeQuietly(conn);
+            throw new RuntimeException(errorMessage + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Executes the query and hands each row to the handler as it arrives,
+     * releasing the statement and connection before returning.
+     */
+    static void forEachRow(DatabaseManager dbManager, String sql, ParameterBinder parameters,
+            RowHandler handler, String errorMessage) {
+        try (Connection conn = dbManager.getConnection();
+                PreparedStatement stmt = prepare(conn, sql)) {
+
+            parameters.bind(stmt);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    handler.handle(rs);
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException(errorMessage + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        if (!MySQLUnitOfWork.inTransaction()) {
+            stmt.setFetchSize(Integer.MIN_VALUE);
+        }
+        return stmt;
+    }
+
+    private Spliterator<T> spliterator() {
+        return new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                T next = readNext();
+                if (next == null) {
+                    return false;
+                }
+                action.accept(next);
+                return true;
+            }
+        };
+    }
+
+    private T readNext() {
+        if (closed) {
+            return null;
+        }
+        try {
+            T next = reader.read(rs);
+            if (next == null) {
+                close();
+            }
+            return next;
+        } catch (SQLException e) {
+            close();
+            throw new RuntimeException(errorMessage + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Releases the result set, statement and connection. Closing a streaming
+     * result set early makes the driver drain its remaining rows.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeQuietly(rs);
+        closeQuietly(stmt);
+        closeQuietly(conn);
+    }
+
+    private static void closeQuietly(AutoCloseable resource) {
+        if (resource == null) {
+            return;
+        }
+        try {
+            resource.close();
+        } catch (Exception e) {
+            System.err.println("Failed to release query resources: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the next element from the result set, which may span several
+     * rows, or returns null once the rows run out.
+     */
+    @FunctionalInterface
+    interface RowReader<T> {
+        T read(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Receives the result set positioned on each row in turn.
+     */
+    @FunctionalInterface
+    interface RowHandler {
+        void handle(ResultSet rs) throws SQLException;
+    }
+}
@@ -0,0 +1,95 @@
+package com.syos.frameworks.persistence;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Field encodings shared by the binary {@link RecordCodec}s.
+ * Integers are zig-zag varints (1 byte for small values), strings are a
+ * varint length followed by UTF-8 bytes (length 0 means null, so lengths are
+ * stored plus one), and dates are epoch days. Dates and date-times are kept as
+ * ISO strings in the data classes, so they are converted here.
+ */
+public final class BinaryEncoding {
+    private BinaryEncoding() {
+    }
+
+    public static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        out.writeByte((int) zigZag);
+    }
+
+    public static long readVarLong(DataInputStream in) throws IOException {
+        long zigZag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        writeVarLong(out, value);
+    }
+
+    public static int readVarInt(DataInputStream in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInputStream in) throws IOException {
+        int length = readVarInt(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes an ISO date string (yyyy-MM-dd) as its epoch day.
+     */
+    public static void writeDate(DataOutputStream out, String isoDate) throws IOException {
+        writeVarLong(out, LocalDate.parse(isoDate).toEpochDay());
+    }
+
+    public static String readDate(DataInputStream in) throws IOException {
+        return LocalDate.ofEpochDay(readVarLong(in)).toString();
+    }
+
+    /**
+     * Writes an ISO date-time string as its epoch day and nano of day.
+     */
+    public static void writeDateTime(DataOutputStream out, String isoDateTime) throws IOException {
+        LocalDateTime dateTime = LocalDateTime.parse(isoDateTime);
+        writeVarLong(out, dateTime.toLocalDate().toEpochDay());
+        writeVarLong(out, dateTime.toLocalTime().toNanoOfDay());
+    }
+
+    public static String readDateTime(DataInputStream in) throws IOException {
+        LocalDate date = LocalDate.ofEpochDay(readVarLong(in));
+        return LocalDateTime.of(date, LocalTime.ofNanoOfDay(readVarLong(in))).toString();
+    }
+}
@@ -0,0 +1,125 @@
+package com.syos.frameworks.persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Read/write lock for one data file. Threads of this process coordinate
+ * through a ReentrantReadWriteLock. When the data directory is shared between
+ * processes, holders also take an advisory {@link FileLock} on a sidecar
+ * ".lock" file: shared for readers, exclusive for writers. The OS lock is
+ * taken by the first local holder and released by the last one, since a JVM
+ * may hold only one lock per region of a file. The handles offer only the
+ * blocking lock and unlock the collections use.
+ */
+class DataFileLock {
+    private final ReentrantReadWriteLock local = new ReentrantReadWriteLock();
+    private final Path lockFile;
+    private final Handle readLock = new LockHandle(false);
+    private final Handle writeLock = new LockHandle(true);
+    private FileChannel channel;
+    private FileLock processLock;
+    private int processHolds;
+
+    /**
+     * @param lockFile Sidecar file for the cross-process lock, or null if the
+     *                 data directory is used by this process only
+     */
+    DataFileLock(Path lockFile) {
+        this.lockFile = lockFile;
+    }
+
+    Handle readLock() {
+        return readLock;
+    }
+
+    Handle writeLock() {
+        return writeLock;
+    }
+
+    boolean isShared() {
+        return lockFile != null;
+    }
+
+    /**
+     * Takes the OS lock unless another local holder already has it. Local
+     * readers and writers exclude each other, so a held lock is either shared
+     * by concurrent readers or exclusive to the writer that is nesting.
+     */
+    private synchronized void acquireProcessLock(boolean exclusive) {
+        if (processHolds++ > 0) {
+            return;
+        }
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            processLock = channel.lock(0, Long.MAX_VALUE, !exclusive);
+        } catch (IOException e) {
+            processHolds--;
+            throw new UncheckedIOException("Failed to lock " + lockFile.getFileName(), e);
+        }
+    }
+
+    private synchronized void releaseProcessLock() {
+        if (--processHolds > 0) {
+            return;
+        }
+        try {
+            processLock.release();
+        } catch (IOException e) {
+            System.err.println("Failed to unlock " + lockFile.getFileName() + ": " + e.getMessage());
+        }
+        processLock = null;
+    }
+
+    /**
+     * The read or the write side of the lock.
+     */
+    interface Handle {
+        void lock();
+
+        void unlock();
+    }
+
+    private class LockHandle implements Handle {
+        private final boolean exclusive;
+
+        LockHandle(boolean exclusive) {
+            this.exclusive = exclusive;
+        }
+
+        private Lock localLock() {
+            return exclusive ? local.writeLock() : local.readLock();
+        }
+
+        @Override
+        public void lock() {
+            localLock().lock();
+            if (lockFile == null) {
+                return;
+            }
+            try {
+                acquireProcessLock(exclusive);
+            } catch (RuntimeException e) {
+                localLock().unlock();
+                throw e;
+            }
+        }
+
+        @Override
+        public void unlock() {
+            if (lockFile != null) {
+                releaseProcessLock();
+            }
+            localLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.syos.frameworks.persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Identity, size and modification time of a data file, used to tell whether
+ * another process has changed the file since it was last read. Atomic
+ * replacement gives a file a new identity (file key), so whole-file rewrites
+ * are detected even when size and mtime happen to match.
+ */
+final class FileStamp {
+    static final FileStamp MISSING = new FileStamp(null, -1, -1);
+
+    private final Object fileKey;
+    private final long size;
+    private final long modifiedNanos;
+
+    private FileStamp(Object fileKey, long size, long modifiedNanos) {
+        this.fileKey = fileKey;
+        this.size = size;
+        this.modifiedNanos = modifiedNanos;
+    }
+
+    static FileStamp of(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new FileStamp(attributes.fileKey(), attributes.size(),
+                    attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+        } catch (NoSuchFileException e) {
+            return MISSING;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to stat " + path.getFileName(), e);
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * True if both stamps describe the same file, so that data past the
+     * older stamp's size is an append rather than a rewrite.
+     */
+    boolean isSameFile(FileStamp other) {
+        return this != MISSING && other != MISSING && Objects.equals(fileKey, other.fileKey)
+                && size <= other.size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        FileStamp other = (FileStamp) o;
+        return size == other.size && modifiedNanos == other.modifiedNanos && Objects.equals(fileKey, other.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fileKey, size, modifiedNanos);
+    }
+}
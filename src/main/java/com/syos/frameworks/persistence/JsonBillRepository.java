@@ -2,86 +2,276 @@ package com.syos.frameworks.persistence;
 
 import com.google.gson.reflect.TypeToken;
 import com.syos.entities.Bill;
+import com.syos.usecases.SerialNumberAllocator;
 import com.syos.usecases.repositories.BillRepository;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
 
 /**
  * JSON-based implementation of BillRepository.
+ * Bills are immutable once built, so they are kept in an append-only journal
+ * (bills.jsonl) instead of a rewritten array. A legacy bills.json file is
+ * migrated into the journal the first time the repository is opened.
+ * With "bills" listed in -Dsyos.json.binary the journal is stored in binary
+ * (bills.bin) through hand-written codecs, and an existing bills.jsonl is
+ * converted on first use.
+ *
+ * Bills archived with {@link #archiveBefore} move to a second journal
+ * (bills_archive.jsonl, or bills_archive.bin in binary mode) that only the
+ * archive finders read. Archiving rewrites the live journal, so it is meant
+ * to run while no other queries are in flight.
+ *
+ * Lookups by serial number, date and transaction type go through in-memory
+ * indexes that map to each bill's byte offset in the journal, so queries read
+ * only the bills they return.
  */
 public class JsonBillRepository implements BillRepository {
-    private static final String FILENAME = "bills.json";
+    private static final String FILENAME = "bills.jsonl";
+    private static final String BINARY_FILENAME = "bills.bin";
+    private static final String LEGACY_FILENAME = "bills.json";
+    private static final String ARCHIVE_FILENAME = "bills_archive.jsonl";
+    private static final String BINARY_ARCHIVE_FILENAME = "bills_archive.bin";
+    private static final String SEQUENCE_NAME = "bill_serial_number";
     private final JsonDataStore dataStore;
-    private final Type listType = new TypeToken<ArrayList<BillData>>() {
+    private final JsonJournal journal;
+    private final JsonJournal archive;
+    private final Type legacyListType = new TypeToken<ArrayList<BillData>>() {
     }.getType();
+    private final SerialNumberAllocator serialNumbers;
+
+    // Secondary indexes over the journal, caught up lazily on each query
+    private static final int ISO_DATE_LENGTH = 10;
+    private final Map<Integer, IndexEntry> entriesBySerial = new HashMap<>();
+    private final TreeMap<LocalDate, List<Integer>> serialsByDate = new TreeMap<>();
+    private final EnumMap<Bill.TransactionType, List<Integer>> serialsByType = new EnumMap<>(
+            Bill.TransactionType.class);
+    private long indexedUpTo;
+    private FileStamp indexedStamp = FileStamp.MISSING;
 
     public JsonBillRepository() {
         this.dataStore = JsonDataStore.getInstance();
+        if (dataStore.isBinary("bills")) {
+            Map<Class<?>, RecordDecoder<?>> codecs = Map.of(BillData.class, new BillDataCodec(),
+                    BillKey.class, new BillKeyDecoder());
+            this.journal = dataStore.binaryJournal(BINARY_FILENAME, codecs);
+            this.archive = dataStore.binaryJournal(BINARY_ARCHIVE_FILENAME, codecs);
+            dataStore.convertToBinary(FILENAME, journal, BillData.class);
+            dataStore.convertToBinary(ARCHIVE_FILENAME, archive, BillData.class);
+        } else {
+            this.journal = dataStore.journal(FILENAME);
+            this.archive = dataStore.journal(ARCHIVE_FILENAME);
+        }
+        migrateLegacyFile();
+        this.serialNumbers = new SerialNumberAllocator(new JsonSequenceRepository(), SEQUENCE_NAME,
+                Integer.getInteger("syos.serial.blockSize", SerialNumberAllocator.DEFAULT_BLOCK_SIZE),
+                this::firstUnusedSerialNumber);
     }
 
     @Override
     public void save(Bill bill) {
-        List<BillData> bills = loadAll();
-        bills.add(toData(bill));
-        dataStore.save(FILENAME, bills);
+        journal.append(toData(bill));
     }
 
     @Override
     public Optional<Bill> findBySerialNumber(int serialNumber) {
-        return loadAll().stream()
-                .filter(b -> b.serialNumber == serialNumber)
-                .map(this::toEntity)
-                .findFirst();
+        List<Long> offsets;
+        synchronized (this) {
+            catchUpIndex();
+            IndexEntry entry = entriesBySerial.get(serialNumber);
+            offsets = entry != null ? List.of(entry.offset) : List.of();
+        }
+        return read(offsets).stream().findFirst();
     }
 
     @Override
     public List<Bill> findAll() {
-        return loadAll().stream()
-                .map(this::toEntity)
-                .toList();
+        List<Bill> bills = new ArrayList<>();
+        journal.scanFrom(0, BillData.class, (offset, data) -> bills.add(toEntity(data)));
+        return bills;
     }
 
     @Override
     public List<Bill> findByDate(LocalDate date) {
-        return loadAll().stream()
-                .filter(b -> LocalDateTime.parse(b.billDate).toLocalDate().equals(date))
-                .map(this::toEntity)
-                .toList();
+        return read(offsetsFor(date, null));
     }
 
     @Override
     public List<Bill> findByTransactionType(Bill.TransactionType type) {
-        return loadAll().stream()
-                .filter(b -> b.transactionType.equals(type.name()))
-                .map(this::toEntity)
-                .toList();
+        List<Long> offsets = new ArrayList<>();
+        synchronized (this) {
+            catchUpIndex();
+            for (int serial : serialsByType.getOrDefault(type, List.of())) {
+                offsets.add(entriesBySerial.get(serial).offset);
+            }
+        }
+        return read(offsets);
     }
 
     @Override
     public List<Bill> findByDateAndType(LocalDate date, Bill.TransactionType type) {
-        return loadAll().stream()
-                .filter(b -> LocalDateTime.parse(b.billDate).toLocalDate().equals(date))
-                .filter(b -> b.transactionType.equals(type.name()))
-                .map(this::toEntity)
-                .toList();
+        return read(offsetsFor(date, type));
     }
 
     @Override
     public int getNextSerialNumber() {
-        List<BillData> bills = loadAll();
-        return bills.stream()
-                .mapToInt(b -> b.serialNumber)
-                .max()
-                .orElse(0) + 1;
+        return serialNumbers.next();
+    }
+
+    /**
+     * Copies the old bills to the archive journal, then rewrites the live
+     * journal without them. A crash in between leaves a bill in both
+     * journals; the archive finders skip such bills, and the next run moves
+     * them again.
+     */
+    @Override
+    public synchronized int archiveBefore(LocalDate horizon) {
+        List<BillData> archived = journal.removeIf(BillData.class,
+                data -> dateOf(data.billDate).isBefore(horizon), archive::appendAll);
+        if (!archived.isEmpty()) {
+            // The rewrite moved every record, so the offsets are stale
+            resetIndex();
+        }
+        return archived.size();
+    }
+
+    @Override
+    public List<Bill> findArchived() {
+        return scanArchive(data -> true);
+    }
+
+    @Override
+    public List<Bill> findArchivedByDate(LocalDate date) {
+        return scanArchive(data -> dateOf(data.billDate).equals(date));
+    }
+
+    /**
+     * Reads the archived bills that match a filter. Bills still present in
+     * the live journal are skipped, as are repeated copies.
+     */
+    private List<Bill> scanArchive(Predicate<BillData> filter) {
+        Set<Integer> liveSerials;
+        synchronized (this) {
+            catchUpIndex();
+            liveSerials = new HashSet<>(entriesBySerial.keySet());
+        }
+        Set<Integer> seen = new HashSet<>();
+        List<Bill> bills = new ArrayList<>();
+        archive.scanFrom(0, BillData.class, (offset, data) -> {
+            if (filter.test(data) && !liveSerials.contains(data.serialNumber) && seen.add(data.serialNumber)) {
+                bills.add(toEntity(data));
+            }
+        });
+        return bills;
+    }
+
+    /**
+     * Seeds the serial sequence past the highest serial in either journal, so
+     * bills written before the sequence file existed are never reused. Tills
+     * sharing the data directory append bills out of serial order, so the
+     * last record is not necessarily the highest; the live serials come from
+     * the index and the archive is scanned for its keys. This runs once, when
+     * the first block of serials is reserved.
+     */
+    private int firstUnusedSerialNumber() {
+        int highest = 0;
+        synchronized (this) {
+            catchUpIndex();
+            for (int serial : entriesBySerial.keySet()) {
+                highest = Math.max(highest, serial);
+            }
+        }
+        int[] archived = {0};
+        archive.scanFrom(0, BillKey.class, (offset, key) -> archived[0] = Math.max(archived[0], key.serialNumber));
+        return Math.max(highest, archived[0]) + 1;
     }
 
-    private List<BillData> loadAll() {
-        return dataStore.load(FILENAME, listType);
+    /**
+     * Journal offsets of the bills on the given date, optionally restricted to
+     * one transaction type.
+     */
+    private synchronized List<Long> offsetsFor(LocalDate date, Bill.TransactionType type) {
+        catchUpIndex();
+        List<Long> offsets = new ArrayList<>();
+        for (int serial : serialsByDate.getOrDefault(date, List.of())) {
+            IndexEntry entry = entriesBySerial.get(serial);
+            if (type == null || entry.type == type) {
+                offsets.add(entry.offset);
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Brings the secondary indexes up to date with the journal. Only records
+     * appended since the last call are read, and only their key fields are
+     * bound, so after the first query this costs one read per new bill.
+     */
+    private void catchUpIndex() {
+        if (dataStore.isSharedDirectory()) {
+            // Another process may have archived bills and rewritten the journal
+            FileStamp stamp = FileStamp.of(journal.getPath());
+            if (indexedUpTo > 0 && !indexedStamp.isSameFile(stamp)) {
+                resetIndex();
+            }
+            indexedStamp = stamp;
+        }
+        indexedUpTo = journal.scanFrom(indexedUpTo, BillKey.class, (offset, key) -> {
+            if (entriesBySerial.containsKey(key.serialNumber)) {
+                return;
+            }
+            Bill.TransactionType type = Bill.TransactionType.valueOf(key.transactionType);
+            LocalDate date = dateOf(key.billDate);
+
+            entriesBySerial.put(key.serialNumber, new IndexEntry(offset, type));
+            serialsByDate.computeIfAbsent(date, d -> new ArrayList<>()).add(key.serialNumber);
+            serialsByType.computeIfAbsent(type, t -> new ArrayList<>()).add(key.serialNumber);
+        });
+    }
+
+    private void resetIndex() {
+        entriesBySerial.clear();
+        serialsByDate.clear();
+        serialsByType.clear();
+        indexedUpTo = 0;
+    }
+
+    private static LocalDate dateOf(String billDate) {
+        return LocalDate.parse(billDate.substring(0, ISO_DATE_LENGTH));
+    }
+
+    private List<Bill> read(List<Long> offsets) {
+        return journal.readAt(offsets, BillData.class).stream()
+                .map(this::toEntity)
+                .toList();
+    }
+
+    private void migrateLegacyFile() {
+        if (journal.exists()) {
+            return;
+        }
+        List<BillData> legacyBills = dataStore.load(LEGACY_FILENAME, legacyListType);
+        if (legacyBills.isEmpty()) {
+            return;
+        }
+        legacyBills.sort(Comparator.comparingInt(b -> b.serialNumber));
+        journal.appendAll(legacyBills);
+        dataStore.archive(LEGACY_FILENAME);
     }
 
     private BillData toData(Bill bill) {
@@ -131,7 +321,7 @@ public class JsonBillRepository implements BillRepository {
         return data;
     }
 
-    private static class BillData {
+    static class BillData {
         int serialNumber;
         String billDate;
         List<BillItemData> items;
@@ -144,7 +334,96 @@ public class JsonBillRepository implements BillRepository {
         String customerId;
     }
 
-    private static class BillItemData {
+    /**
+     * Key fields of a journal record, bound when building the indexes.
+     */
+    static class BillKey {
+        int serialNumber;
+        String billDate;
+        String transactionType;
+    }
+
+    /**
+     * Binary layout of a bill. The key fields come first so that
+     * {@link BillKeyDecoder} can stop reading after them.
+     */
+    static class BillDataCodec implements RecordCodec<BillData> {
+        @Override
+        public void write(BillData data, DataOutputStream out) throws IOException {
+            BinaryEncoding.writeVarInt(out, data.serialNumber);
+            BinaryEncoding.writeDateTime(out, data.billDate);
+            BinaryEncoding.writeString(out, data.transactionType);
+            BinaryEncoding.writeString(out, data.customerId);
+            out.writeDouble(data.subtotal);
+            out.writeDouble(data.discount);
+            out.writeDouble(data.total);
+            out.writeDouble(data.cashTendered);
+            out.writeDouble(data.change);
+            BinaryEncoding.writeVarInt(out, data.items.size());
+            for (BillItemData item : data.items) {
+                BinaryEncoding.writeString(out, item.productCode);
+                BinaryEncoding.writeString(out, item.productName);
+                BinaryEncoding.writeString(out, item.unit);
+                BinaryEncoding.writeVarInt(out, item.quantity);
+                out.writeDouble(item.price);
+                out.writeDouble(item.discountPercentage);
+            }
+        }
+
+        @Override
+        public BillData read(DataInputStream in) throws IOException {
+            BillData data = new BillData();
+            data.serialNumber = BinaryEncoding.readVarInt(in);
+            data.billDate = BinaryEncoding.readDateTime(in);
+            data.transactionType = BinaryEncoding.readString(in);
+            data.customerId = BinaryEncoding.readString(in);
+            data.subtotal = in.readDouble();
+            data.discount = in.readDouble();
+            data.total = in.readDouble();
+            data.cashTendered = in.readDouble();
+            data.change = in.readDouble();
+            int itemCount = BinaryEncoding.readVarInt(in);
+            List<BillItemData> items = new ArrayList<>(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                BillItemData item = new BillItemData();
+                item.productCode = BinaryEncoding.readString(in);
+                item.productName = BinaryEncoding.readString(in);
+                item.unit = BinaryEncoding.readString(in);
+                item.quantity = BinaryEncoding.readVarInt(in);
+                item.price = in.readDouble();
+                item.discountPercentage = in.readDouble();
+                items.add(item);
+            }
+            data.items = items;
+            return data;
+        }
+    }
+
+    /**
+     * Reads only the key fields at the start of a {@link BillDataCodec} frame.
+     */
+    static class BillKeyDecoder implements RecordDecoder<BillKey> {
+        @Override
+        public BillKey read(DataInputStream in) throws IOException {
+            BillKey key = new BillKey();
+            key.serialNumber = BinaryEncoding.readVarInt(in);
+            key.billDate = BinaryEncoding.readDateTime(in);
+            key.transactionType = BinaryEncoding.readString(in);
+            return key;
+        }
+    }
+
+    private static class IndexEntry {
+        final long offset;
+        final Bill.TransactionType type;
+
+        IndexEntry(long offset, Bill.TransactionType type) {
+            this.offset = offset;
+            this.type = type;
+        }
+    }
+
+    static class BillItemData {
         String productCode;
         String productName;
         String unit;
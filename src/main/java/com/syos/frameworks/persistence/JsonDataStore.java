@@ -2,32 +2,145 @@ package com.syos.frameworks.persistence;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
 import com.google.gson.reflect.TypeToken;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Singleton class for managing JSON data storage.
  * Implements Singleton Pattern - ensures single instance for data management.
  * Provides centralized data persistence.
+ *
+ * In resident mode each collection is kept in memory after its first load.
+ * Saves only replace the in-memory copy and mark it dirty; dirty collections
+ * are written back by a background flusher and once more on JVM shutdown.
+ * Resident mode is enabled with -Dsyos.json.resident=true and the flush
+ * interval is set with -Dsyos.json.flushIntervalMs (default 5000).
+ *
+ * Every file has its own read/write lock: loads and scans of a file run in
+ * parallel, while saves of that file serialize. Read-modify-write cycles
+ * should go through {@link #transact} so they run under the write lock.
+ *
+ * Several processes (counter terminals) may share one data directory when
+ * started with -Dsyos.json.shared=true. The file locks are then backed by
+ * advisory OS locks on sidecar ".lock" files, and the cached views of a file
+ * (hash indexes, upsert logs, bill indexes) compare its identity, size and
+ * mtime on access, re-reading it only when another process has changed it.
+ * Resident mode keeps unsaved data in one process and is not available then.
+ *
+ * Append-only collections are stored as {@link JsonJournal}s. Pending journal
+ * appends are fsynced every -Dsyos.json.journalSyncMs (default 200) and on
+ * shutdown. Hot journals can be stored in a binary format instead, written by
+ * hand-written {@link RecordCodec}s rather than Gson; the collections listed in
+ * -Dsyos.json.binary (for example "bills,stock_batches") use it, and their
+ * existing JSON journals are converted with {@link #convertToBinary}.
+ *
+ * Collection files are written in the {@link StorageFormat} selected with
+ * -Dsyos.json.format (PRETTY, COMPACT or GZIP; default COMPACT, which an
+ * unknown name also falls back to). The format of an existing file is
+ * detected on read, and {@link #migrateAll} rewrites the data directory in a
+ * new format.
  */
 public class JsonDataStore {
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 5000;
+    private static final long DEFAULT_JOURNAL_SYNC_MS = 200;
+    private static final long DEFAULT_CHECKPOINT_INTERVAL_MS = 30000;
+    private static final int GZIP_MAGIC_FIRST_BYTE = 0x1f;
+    private static final int GZIP_MAGIC_SECOND_BYTE = 0x8b;
+
     private static JsonDataStore instance;
     private final Gson gson;
+    private final Gson compactGson;
     private final String dataDirectory;
+    private volatile StorageFormat storageFormat;
+    private ScheduledExecutorService scheduler;
+    private Thread shutdownHook;
+
+    // Resident mode state
+    private final Map<String, List<?>> residentCollections = new ConcurrentHashMap<>();
+    private final Set<String> dirtyCollections = ConcurrentHashMap.newKeySet();
+    private volatile ScheduledFuture<?> residentFlush;
+
+    // Append-only journals, one writer per file
+    private final Map<String, JsonJournal> journals = new ConcurrentHashMap<>();
+
+    // Hash-indexed collections, one index per file
+    private final Map<String, JsonKeyedCollection<?>> keyedCollections = new ConcurrentHashMap<>();
+    // Log-structured keyed collections, one per journal file
+    private final Map<String, JsonUpsertLog<?>> upsertLogs = new ConcurrentHashMap<>();
+
+    // Per-file locks: readers of a file run in parallel, writers serialize
+    private final Map<String, DataFileLock> fileLocks = new ConcurrentHashMap<>();
+    private final boolean sharedDirectory;
+
+    // Write-ahead log for the hash-indexed collections, null when disabled
+    private final WriteAheadLog wal;
 
     private JsonDataStore() {
+        this("data");
+    }
+
+    /**
+     * Creates a store over the given directory. The application shares the
+     * store of {@link #getInstance}; tests create their own.
+     */
+    JsonDataStore(String dataDirectory) {
         this.gson = new GsonBuilder()
                 .setPrettyPrinting()
                 .setDateFormat("yyyy-MM-dd'T'HH:mm:ss")
                 .create();
-        this.dataDirectory = "data";
+        this.compactGson = new GsonBuilder()
+                .setDateFormat("yyyy-MM-dd'T'HH:mm:ss")
+                .create();
+        this.dataDirectory = dataDirectory;
+        this.sharedDirectory = Boolean.getBoolean("syos.json.shared");
+        this.storageFormat = configuredStorageFormat();
         initializeDataDirectory();
+
+        if (Boolean.getBoolean("syos.json.resident") && sharedDirectory) {
+            System.err.println("Resident mode is not available with a shared data directory; ignoring it");
+        } else if (Boolean.getBoolean("syos.json.resident")) {
+            enableResidentMode(Long.getLong("syos.json.flushIntervalMs", DEFAULT_FLUSH_INTERVAL_MS));
+        }
+
+        if (Boolean.getBoolean("syos.json.wal") && sharedDirectory) {
+            System.err.println("The write-ahead log is not available with a shared data directory; ignoring it");
+            this.wal = null;
+        } else if (Boolean.getBoolean("syos.json.wal")) {
+            this.wal = new WriteAheadLog(Paths.get(dataDirectory), compactGson);
+            long checkpointMillis = Long.getLong("syos.json.checkpointMs", DEFAULT_CHECKPOINT_INTERVAL_MS);
+            scheduler().scheduleWithFixedDelay(wal::checkpoint, checkpointMillis, checkpointMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.wal = null;
+        }
     }
 
     /**
@@ -49,24 +162,410 @@ public class JsonDataStore {
         }
     }
 
-    public <T> void save(String filename, List<T> data) {
-        String filepath = dataDirectory + File.separator + filename;
-        try (Writer writer = new FileWriter(filepath)) {
-            gson.toJson(data, writer);
+    /**
+     * Switches the store to resident (write-behind) mode.
+     * Dirty collections are flushed every flushIntervalMillis and on shutdown.
+     */
+    public synchronized void enableResidentMode(long flushIntervalMillis) {
+        if (flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Flush interval must be positive");
+        }
+        if (residentFlush != null) {
+            residentFlush.cancel(false);
+        }
+        residentFlush = scheduler().scheduleWithFixedDelay(this::flush,
+                flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isResident() {
+        return residentFlush != null;
+    }
+
+    public StorageFormat getStorageFormat() {
+        return storageFormat;
+    }
+
+    /**
+     * Sets the format used for subsequent writes. Existing files keep their
+     * format until they are next written or migrated.
+     */
+    public void setStorageFormat(StorageFormat storageFormat) {
+        this.storageFormat = storageFormat;
+    }
+
+    private static StorageFormat configuredStorageFormat() {
+        String name = System.getProperty("syos.json.format", StorageFormat.COMPACT.name());
+        try {
+            return StorageFormat.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown storage format " + name + ", expected one of "
+                    + Arrays.toString(StorageFormat.values()) + "; using " + StorageFormat.COMPACT);
+            return StorageFormat.COMPACT;
+        }
+    }
+
+    /**
+     * One-shot migration of a collection file to the given format.
+     */
+    public void migrate(String filename, StorageFormat format) {
+        if (!Files.exists(resolve(filename))) {
+            return;
+        }
+        if (dirtyCollections.contains(filename)) {
+            flush();
+        }
+        DataFileLock.Handle lock = lockFor(filename).writeLock();
+        lock.lock();
+        try {
+            List<JsonElement> records = read(filename, new TypeToken<ArrayList<JsonElement>>() {
+            }.getType());
+            write(filename, records, format);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Migrates every collection file in the data directory to the given format
+     * and makes it the format for subsequent writes. A collection file keeps
+     * its .json name in every format, so files already converted are found
+     * and converted again; journals (.jsonl, .bin) and the backups left by
+     * {@link #archive} are not collection files and are left alone.
+     */
+    public void migrateAll(StorageFormat format) {
+        setStorageFormat(format);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(dataDirectory), "*.json")) {
+            for (Path file : files) {
+                migrate(file.getFileName().toString(), format);
+            }
         } catch (IOException e) {
-            System.err.println("Failed to save data to " + filename + ": " + e.getMessage());
+            System.err.println("Failed to migrate data directory: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the shared append-only journal for the given file.
+     */
+    public JsonJournal journal(String filename) {
+        return journal(filename, null);
+    }
+
+    /**
+     * Returns the shared journal for the given file, stored in binary frames
+     * encoded by the given codecs. Every record type that is appended to the
+     * journal needs a {@link RecordCodec}; types that are only read from it,
+     * such as projections, need just a {@link RecordDecoder}.
+     */
+    public JsonJournal binaryJournal(String filename, Map<Class<?>, RecordDecoder<?>> codecs) {
+        return journal(filename, codecs);
+    }
+
+    private JsonJournal journal(String filename, Map<Class<?>, RecordDecoder<?>> codecs) {
+        return journals.computeIfAbsent(filename, f -> {
+            long syncMillis = Long.getLong("syos.json.journalSyncMs", DEFAULT_JOURNAL_SYNC_MS);
+            JsonJournal journal = new JsonJournal(resolve(f), lockFor(f), compactGson,
+                    JsonJournal.DEFAULT_SYNC_BATCH_SIZE, wal != null, codecs);
+            scheduler().scheduleWithFixedDelay(journal::sync, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+            return journal;
+        });
+    }
+
+    /**
+     * Returns the shared hash-indexed view of a collection file.
+     */
+    @SuppressWarnings("unchecked")
+    <T> JsonKeyedCollection<T> keyed(String filename, Type listType, Function<T, String> keyOf) {
+        return (JsonKeyedCollection<T>) keyedCollections.computeIfAbsent(filename,
+                f -> new JsonKeyedCollection<>(this, f, listType, keyOf, wal));
+    }
+
+    /**
+     * Returns the shared log-structured view of a journal file.
+     *
+     * @param codecs Binary codecs for the journal, or null to store JSON lines
+     */
+    @SuppressWarnings("unchecked")
+    <T> JsonUpsertLog<T> upsertLog(String filename, Class<T> recordType, Function<T, String> keyOf,
+            Predicate<T> isTombstone, Map<Class<?>, RecordDecoder<?>> codecs) {
+        return (JsonUpsertLog<T>) upsertLogs.computeIfAbsent(filename,
+                f -> new JsonUpsertLog<>(journal(f, codecs), lockFor(f), recordType, keyOf, isTombstone));
+    }
+
+    /**
+     * True if the given collection is listed in -Dsyos.json.binary and should
+     * use a binary journal.
+     */
+    public boolean isBinary(String collection) {
+        for (String name : System.getProperty("syos.json.binary", "").split(",")) {
+            if (name.trim().equalsIgnoreCase(collection)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the records of a JSON lines journal into an empty binary journal,
+     * in their original order, and archives the JSON file.
+     *
+     * @return false if there was nothing to convert or the target already exists
+     */
+    public <T> boolean convertToBinary(String jsonFilename, JsonJournal target, Class<T> recordType) {
+        if (target.exists() || !Files.exists(resolve(jsonFilename))) {
+            return false;
+        }
+        // A private reader, so the JSON file gets no shared writer or sync task
+        JsonJournal source = new JsonJournal(resolve(jsonFilename), lockFor(jsonFilename), compactGson,
+                JsonJournal.DEFAULT_SYNC_BATCH_SIZE, false, null);
+        List<T> records = new ArrayList<>();
+        source.scanFrom(0, recordType, (offset, record) -> records.add(record));
+        target.appendAll(records);
+        archive(jsonFilename);
+        return true;
+    }
+
+    /**
+     * Renames a file whose contents have been migrated elsewhere, keeping it as
+     * a backup next to the original.
+     */
+    void archive(String filename) {
+        DataFileLock.Handle lock = lockFor(filename).writeLock();
+        lock.lock();
+        try {
+            Files.move(resolve(filename), resolve(filename + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Failed to archive " + filename + ": " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the lock that guards a file. The read lock is held while the
+     * file is loaded or scanned, the write lock while it is replaced.
+     */
+    DataFileLock lockFor(String filename) {
+        return fileLocks.computeIfAbsent(filename,
+                f -> new DataFileLock(sharedDirectory ? resolve(f + ".lock") : null));
+    }
+
+    /**
+     * True if other processes may write to the data directory, in which case
+     * cached views must check {@link #stampOf} before trusting their copy.
+     */
+    boolean isSharedDirectory() {
+        return sharedDirectory;
+    }
+
+    FileStamp stampOf(String filename) {
+        return FileStamp.of(resolve(filename));
+    }
+
+    Path resolve(String filename) {
+        return Paths.get(dataDirectory, filename);
+    }
+
+    private synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "json-data-store-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (shutdownHook == null) {
+            shutdownHook = new Thread(this::flush, "json-data-store-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+        return scheduler;
+    }
+
+    public <T> void save(String filename, List<T> data) {
+        DataFileLock.Handle lock = lockFor(filename).writeLock();
+        lock.lock();
+        try {
+            if (isResident()) {
+                residentCollections.put(filename, new ArrayList<>(data));
+                dirtyCollections.add(filename);
+                return;
+            }
+            write(filename, data);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Saves a collection and writes it to disk before returning, regardless of
+     * resident mode.
+     */
+    public <T> void saveNow(String filename, List<T> data) {
+        DataFileLock.Handle lock = lockFor(filename).writeLock();
+        lock.lock();
+        try {
+            if (isResident()) {
+                residentCollections.put(filename, new ArrayList<>(data));
+                dirtyCollections.remove(filename);
+            }
+            write(filename, data);
+        } finally {
+            lock.unlock();
         }
     }
 
     public <T> List<T> load(String filename, Type type) {
-        String filepath = dataDirectory + File.separator + filename;
-        File file = new File(filepath);
+        DataFileLock.Handle lock = lockFor(filename).readLock();
+        lock.lock();
+        try {
+            if (isResident()) {
+                @SuppressWarnings("unchecked")
+                List<T> cached = (List<T>) residentCollections.computeIfAbsent(filename, f -> read(f, type));
+                return new ArrayList<>(cached);
+            }
+            return read(filename, type);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        if (!file.exists()) {
+    /**
+     * Runs a load-modify-save cycle on a collection while holding the file's
+     * write lock, so concurrent cycles on the same file cannot lose each
+     * other's changes. The mutator edits the loaded list in place; the list is
+     * saved afterwards unless the mutator throws.
+     *
+     * @return the mutator's result
+     */
+    public <T, R> R transact(String filename, Type type, Function<List<T>, R> mutator) {
+        DataFileLock.Handle lock = lockFor(filename).writeLock();
+        lock.lock();
+        try {
+            List<T> data = load(filename, type);
+            R result = mutator.apply(data);
+            save(filename, data);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a checkpoint of a collection to disk and reports whether it
+     * succeeded, so the write-ahead log only discards entries that are safe.
+     */
+    <T> boolean writeSnapshot(String filename, List<T> data) {
+        DataFileLock.Handle lock = lockFor(filename).writeLock();
+        lock.lock();
+        try {
+            if (isResident()) {
+                residentCollections.put(filename, new ArrayList<>(data));
+                dirtyCollections.remove(filename);
+            }
+            return write(filename, data, storageFormat);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes every dirty resident collection back to disk, syncs journals and
+     * checkpoints the write-ahead log.
+     */
+    public synchronized void flush() {
+        for (String filename : dirtyCollections) {
+            DataFileLock.Handle lock = lockFor(filename).writeLock();
+            lock.lock();
+            try {
+                dirtyCollections.remove(filename);
+                List<?> data = residentCollections.get(filename);
+                if (data != null) {
+                    write(filename, data);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        journals.values().forEach(JsonJournal::sync);
+        if (wal != null) {
+            wal.checkpoint();
+        }
+    }
+
+    /**
+     * Flushes pending writes, closes journals and stops the background flusher.
+     */
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+            residentFlush = null;
+        }
+        flush();
+        journals.values().forEach(JsonJournal::close);
+        journals.clear();
+        upsertLogs.clear();
+        residentCollections.clear();
+    }
+
+    private <T> void write(String filename, List<T> data) {
+        write(filename, data, storageFormat);
+    }
+
+    /**
+     * Replaces a collection file atomically. The data is written to a temp
+     * file in the same directory, forced to disk and then moved over the
+     * target, so a crash never leaves a truncated file and readers see either
+     * the old or the new contents.
+     */
+    private <T> boolean write(String filename, List<T> data, StorageFormat format) {
+        Path path = resolve(filename);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(path.getParent(), filename, ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                OutputStream channelOutput = Channels.newOutputStream(channel);
+                GZIPOutputStream gzip = format == StorageFormat.GZIP ? new GZIPOutputStream(channelOutput) : null;
+                Writer writer = new BufferedWriter(new OutputStreamWriter(
+                        gzip != null ? gzip : channelOutput, StandardCharsets.UTF_8));
+
+                (format == StorageFormat.PRETTY ? gson : compactGson).toJson(data, writer);
+                writer.flush();
+                if (gzip != null) {
+                    gzip.finish();
+                }
+                channel.force(true);
+            }
+            moveIntoPlace(temp, path);
+            return true;
+        } catch (IOException | JsonIOException e) {
+            System.err.println("Failed to save data to " + filename + ": " + e.getMessage());
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // Best effort cleanup
+                }
+            }
+            return false;
+        }
+    }
+
+    private void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private <T> List<T> read(String filename, Type type) {
+        Path path = resolve(filename);
+
+        if (!Files.exists(path)) {
             return new ArrayList<>();
         }
 
-        try (Reader reader = new FileReader(filepath)) {
+        try (Reader reader = openReader(path)) {
             List<T> data = gson.fromJson(reader, type);
             return data != null ? data : new ArrayList<>();
         } catch (IOException e) {
@@ -75,6 +574,21 @@ public class JsonDataStore {
         }
     }
 
+    /**
+     * Opens a collection file for reading, transparently decompressing it when
+     * it starts with the gzip magic number.
+     */
+    private Reader openReader(Path path) throws IOException {
+        InputStream input = new BufferedInputStream(Files.newInputStream(path));
+        input.mark(2);
+        boolean gzip = input.read() == GZIP_MAGIC_FIRST_BYTE && input.read() == GZIP_MAGIC_SECOND_BYTE;
+        input.reset();
+        if (gzip) {
+            input = new GZIPInputStream(input);
+        }
+        return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
+
     public Gson getGson() {
         return gson;
     }
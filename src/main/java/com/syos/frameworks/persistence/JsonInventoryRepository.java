@@ -11,66 +11,103 @@ import java.util.Optional;
 
 /**
  * JSON-based implementation of InventoryRepository.
+ * Inventory records are indexed by product code in memory for O(1) lookups.
  */
 public class JsonInventoryRepository implements InventoryRepository {
     private static final String FILENAME = "inventory.json";
-    private final JsonDataStore dataStore;
+    private final JsonKeyedCollection<InventoryData> inventories;
     private final Type listType = new TypeToken<ArrayList<InventoryData>>() {
     }.getType();
 
     public JsonInventoryRepository() {
-        this.dataStore = JsonDataStore.getInstance();
+        this.inventories = JsonDataStore.getInstance().keyed(FILENAME, listType, data -> data.productCode);
     }
 
     @Override
     public void save(Inventory inventory) {
-        List<InventoryData> inventories = loadAll();
-        inventories.add(toData(inventory));
-        dataStore.save(FILENAME, inventories);
+        inventories.put(toData(inventory));
     }
 
     @Override
     public Optional<Inventory> findByProductCode(String productCode) {
-        return loadAll().stream()
-                .filter(i -> i.productCode.equals(productCode))
-                .map(this::toEntity)
-                .findFirst();
+        return inventories.get(productCode).map(this::toEntity);
     }
 
     @Override
     public List<Inventory> findAll() {
-        return loadAll().stream()
+        return inventories.values().stream()
                 .map(this::toEntity)
                 .toList();
     }
 
     @Override
     public void update(Inventory inventory) {
-        List<InventoryData> inventories = loadAll();
+        if (!inventories.replace(toData(inventory))) {
+            throw new IllegalArgumentException("Inventory not found: " + inventory.getProductCode());
+        }
+    }
 
-        for (int i = 0; i < inventories.size(); i++) {
-            if (inventories.get(i).productCode.equals(inventory.getProductCode())) {
-                inventories.set(i, toData(inventory));
-                dataStore.save(FILENAME, inventories);
-                return;
+    /**
+     * Compares the stored quantity with the requested one and writes the
+     * reduced record in one step under the collection's write lock.
+     */
+    @Override
+    public boolean tryDecrement(String productCode, Inventory.Location location, int quantity) {
+        return inventories.computeIfPresent(productCode, current -> {
+            if (quantityAt(current, location) < quantity) {
+                return null;
             }
+            return adjusted(current, location, -quantity);
+        });
+    }
+
+    @Override
+    public void increment(String productCode, Inventory.Location location, int quantity) {
+        if (!inventories.computeIfPresent(productCode, current -> adjusted(current, location, quantity))) {
+            throw new IllegalArgumentException("Inventory not found: " + productCode);
         }
+    }
 
-        throw new IllegalArgumentException("Inventory not found: " + inventory.getProductCode());
+    private InventoryData adjusted(InventoryData current, Inventory.Location location, int delta) {
+        InventoryData updated = new InventoryData();
+        updated.productCode = current.productCode;
+        updated.shelfQuantity = current.shelfQuantity;
+        updated.storeQuantity = current.storeQuantity;
+        updated.onlineQuantity = current.onlineQuantity;
+        switch (location) {
+            case SHELF:
+                updated.shelfQuantity += delta;
+                break;
+            case STORE:
+                updated.storeQuantity += delta;
+                break;
+            case ONLINE:
+                updated.onlineQuantity += delta;
+                break;
+        }
+        return updated;
+    }
+
+    private int quantityAt(InventoryData data, Inventory.Location location) {
+        switch (location) {
+            case SHELF:
+                return data.shelfQuantity;
+            case STORE:
+                return data.storeQuantity;
+            case ONLINE:
+                return data.onlineQuantity;
+            default:
+                throw new IllegalArgumentException("Unknown location: " + location);
+        }
     }
 
     @Override
     public List<Inventory> findBelowReorderLevel() {
-        return loadAll().stream()
-                .map(this::toEntity)
+        return findAll().stream()
                 .filter(Inventory::isBelowReorderLevel)
                 .toList();
     }
 
-    private List<InventoryData> loadAll() {
-        return dataStore.load(FILENAME, listType);
-    }
-
     private InventoryData toData(Inventory inventory) {
         InventoryData data = new InventoryData();
         data.productCode = inventory.getProductCode();
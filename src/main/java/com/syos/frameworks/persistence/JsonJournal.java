@@ -0,0 +1,479 @@
+package com.syos.frameworks.persistence;
+
+import com.google.gson.Gson;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Append-only, newline-delimited JSON journal (one compact record per line).
+ * Appends are buffered and fsynced in batches: the journal is forced to disk
+ * once syncBatchSize records are pending, on every periodic sync tick, and
+ * before close. Records are read back with {@link #scanFrom}, or by offset
+ * with {@link #readAt}. Obtain instances through {@link JsonDataStore#journal(String)}
+ * so that all repositories share one writer per file.
+ *
+ * Writers hold the file's write lock and readers its read lock. When the data
+ * directory is shared between processes, each append is flushed before the
+ * lock is released so other processes never see half a record, and the
+ * writer is reopened if another process has compacted the journal.
+ *
+ * A durable journal (write-ahead log mode) does not acknowledge an append
+ * until the record is on disk. Appenders are group committed: one thread
+ * forces the file for every record appended so far while the others wait
+ * for it, so concurrent appends share a single fsync.
+ *
+ * A binary journal (see {@link JsonDataStore#binaryJournal}) stores records
+ * with hand-written {@link RecordCodec}s instead of Gson. Each record is a
+ * frame of (int length, encoded record, int length), and a scan stops at a
+ * frame the file does not yet hold completely. Offsets work the same way in
+ * both formats.
+ */
+public class JsonJournal {
+    static final int DEFAULT_SYNC_BATCH_SIZE = 32;
+    private static final int FRAME_OVERHEAD = 8;
+
+    private final Path path;
+    private final DataFileLock lock;
+    private final Gson gson;
+    private final int syncBatchSize;
+    private final boolean durable;
+    private final Map<Class<?>, RecordDecoder<?>> codecs;
+    private final Object syncLock = new Object();
+    private FileOutputStream output;
+    private OutputStream writer;
+    private FileStamp openedStamp;
+    private int pendingRecords;
+    private long appendedRecords;
+    private volatile long durableRecords;
+
+    /**
+     * @param codecs Binary codecs (or decoders, for types that are only read)
+     *               by record type, or null for a JSON lines journal
+     */
+    JsonJournal(Path path, DataFileLock lock, Gson gson, int syncBatchSize, boolean durable,
+            Map<Class<?>, RecordDecoder<?>> codecs) {
+        this.path = path;
+        this.lock = lock;
+        this.gson = gson;
+        this.syncBatchSize = syncBatchSize;
+        this.durable = durable;
+        this.codecs = codecs;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    /**
+     * Appends a record as a single compact JSON line or binary frame. A durable journal
+     * returns once the record is on disk.
+     */
+    public void append(Object record) {
+        awaitDurable(appendBuffered(record));
+    }
+
+    /**
+     * Appends a record without waiting for it to become durable, so callers
+     * can release their own locks before {@link #awaitDurable}.
+     *
+     * @return the record's sequence number in this journal
+     */
+    long appendBuffered(Object record) {
+        lock.writeLock().lock();
+        try {
+            synchronized (this) {
+                OutputStream out = openWriter();
+                writeRecord(out, record);
+                long sequence = ++appendedRecords;
+                if (++pendingRecords >= syncBatchSize && !durable) {
+                    sync();
+                } else if (lock.isShared()) {
+                    out.flush();
+                }
+                return sequence;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to journal " + path.getFileName(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Blocks until the record with the given sequence number is on disk.
+     * Returns immediately unless the journal is durable.
+     */
+    void awaitDurable(long sequence) {
+        if (!durable || durableRecords >= sequence) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (durableRecords >= sequence) {
+                return; // Forced by the previous group
+            }
+            long target;
+            FileOutputStream file;
+            synchronized (this) {
+                if (writer == null) {
+                    return; // Closed, and therefore synced, since the append
+                }
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to flush journal " + path.getFileName(), e);
+                }
+                target = appendedRecords;
+                file = output;
+            }
+            // Force outside the append lock so the next group can build up
+            try {
+                file.getChannel().force(false);
+            } catch (ClosedChannelException e) {
+                // Closed meanwhile; a journal is forced before it is closed
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to sync journal " + path.getFileName(), e);
+            }
+            durableRecords = Math.max(durableRecords, target);
+        }
+    }
+
+    /**
+     * Appends all records and forces them to disk in one batch.
+     */
+    public void appendAll(List<?> records) {
+        lock.writeLock().lock();
+        try {
+            synchronized (this) {
+                OutputStream out = openWriter();
+                for (Object record : records) {
+                    writeRecord(out, record);
+                }
+                pendingRecords += records.size();
+                appendedRecords += records.size();
+                sync();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to journal " + path.getFileName(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes buffered records and forces them to disk.
+     */
+    public synchronized void sync() {
+        if (writer == null || pendingRecords == 0) {
+            return;
+        }
+        try {
+            writer.flush();
+            output.getChannel().force(false);
+            pendingRecords = 0;
+            durableRecords = appendedRecords;
+        } catch (IOException e) {
+            System.err.println("Failed to sync journal " + path.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams the complete records that start at or after the given byte
+     * offset, passing each record together with its own offset. A partially
+     * written last record is left for the next call.
+     *
+     * @return the offset just past the last complete record
+     */
+    public <T> long scanFrom(long offset, Class<T> recordType, BiConsumer<Long, T> consumer) {
+        flushToFile();
+        lock.readLock().lock();
+        try (FileChannel channel = exists() ? FileChannel.open(path, StandardOpenOption.READ) : null) {
+            if (channel == null) {
+                return offset;
+            }
+            if (codecs != null) {
+                return scanFrames(channel, offset, recordType, consumer);
+            }
+            channel.position(offset);
+            InputStream input = new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+            long lineStart = offset;
+            long position = offset;
+            int b;
+            while ((b = input.read()) != -1) {
+                position++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                if (line.size() > 0) {
+                    consumer.accept(lineStart, gson.fromJson(line.toString(StandardCharsets.UTF_8), recordType));
+                    line.reset();
+                }
+                lineStart = position;
+            }
+            return lineStart;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read journal " + path.getFileName(), e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <T> long scanFrames(FileChannel channel, long offset, Class<T> recordType,
+            BiConsumer<Long, T> consumer) throws IOException {
+        long remaining = channel.size() - offset;
+        channel.position(offset);
+        DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+        byte[] payload = new byte[512];
+        long position = offset;
+        while (remaining >= FRAME_OVERHEAD) {
+            int length = input.readInt();
+            if (remaining < length + FRAME_OVERHEAD) {
+                break; // Partially written frame
+            }
+            if (payload.length < length) {
+                payload = new byte[Math.max(length, payload.length * 2)];
+            }
+            input.readFully(payload, 0, length);
+            input.readInt();
+            consumer.accept(position, decode(payload, length, recordType));
+            position += length + FRAME_OVERHEAD;
+            remaining -= length + FRAME_OVERHEAD;
+        }
+        return position;
+    }
+
+    /**
+     * Reads the records starting at the given byte offsets, in the order given.
+     */
+    public <T> List<T> readAt(List<Long> offsets, Class<T> recordType) {
+        flushToFile();
+        List<T> records = new ArrayList<>(offsets.size());
+        if (offsets.isEmpty()) {
+            return records;
+        }
+
+        lock.readLock().lock();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            for (long offset : offsets) {
+                records.add(codecs != null
+                        ? readFrameAt(channel, offset, recordType)
+                        : gson.fromJson(readLineAt(channel, offset, buffer), recordType));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read journal " + path.getFileName(), e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return records;
+    }
+
+    private <T> T readFrameAt(FileChannel channel, long offset, Class<T> recordType) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(channel, header, offset);
+        ByteBuffer payload = ByteBuffer.allocate(header.getInt(0));
+        readFully(channel, payload, offset + 4);
+        return decode(payload.array(), payload.capacity(), recordType);
+    }
+
+    private void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated record in journal " + path.getFileName());
+            }
+        }
+    }
+
+    private String readLineAt(FileChannel channel, long offset, ByteBuffer buffer) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(buffer.capacity());
+        long position = offset;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            buffer.flip();
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    line.write(buffer.array(), 0, i);
+                    return line.toString(StandardCharsets.UTF_8);
+                }
+            }
+            line.write(buffer.array(), 0, read);
+            position += read;
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Replaces the whole journal with the given records, for compaction. The
+     * records are written to a temp file that is forced to disk and then moved
+     * over the journal, so a crash leaves either the old or the new journal.
+     * Offsets obtained before the rewrite are no longer valid.
+     */
+    public void rewrite(List<?> records) {
+        lock.writeLock().lock();
+        try {
+            synchronized (this) {
+                close();
+                replaceWith(records);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the records matching a filter by rewriting the journal with the
+     * others. The removed records are handed to beforeRewrite while the
+     * journal is still locked, so they can be copied elsewhere first; a crash
+     * between the two steps leaves them in both places.
+     *
+     * @return the removed records, in journal order
+     */
+    public <T> List<T> removeIf(Class<T> recordType, Predicate<T> filter, Consumer<List<T>> beforeRewrite) {
+        lock.writeLock().lock();
+        try {
+            List<T> kept = new ArrayList<>();
+            List<T> removed = new ArrayList<>();
+            scanFrom(0, recordType, (offset, record) -> (filter.test(record) ? removed : kept).add(record));
+            if (!removed.isEmpty()) {
+                beforeRewrite.accept(removed);
+                rewrite(kept);
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void replaceWith(List<?> records) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+            try (FileOutputStream tempOutput = new FileOutputStream(temp.toFile());
+                    OutputStream out = new BufferedOutputStream(tempOutput, 64 * 1024)) {
+                for (Object record : records) {
+                    writeRecord(out, record);
+                }
+                out.flush();
+                tempOutput.getChannel().force(true);
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // Best effort cleanup
+                }
+            }
+            throw new UncheckedIOException("Failed to rewrite journal " + path.getFileName(), e);
+        }
+    }
+
+    public synchronized void close() {
+        sync();
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close journal " + path.getFileName() + ": " + e.getMessage());
+            }
+            writer = null;
+            output = null;
+            openedStamp = null;
+        }
+    }
+
+    synchronized void flushToFile() {
+        if (writer != null) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to flush journal " + path.getFileName(), e);
+            }
+        }
+    }
+
+    private void writeRecord(OutputStream out, Object record) throws IOException {
+        if (codecs == null) {
+            out.write(gson.toJson(record).getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+            return;
+        }
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(256);
+        DataOutputStream data = new DataOutputStream(frame);
+        data.writeInt(0); // Length, patched below
+        this.<Object>encoderFor(record.getClass()).write(record, data);
+        int length = frame.size() - 4;
+        data.writeInt(length);
+        byte[] bytes = frame.toByteArray();
+        ByteBuffer.wrap(bytes).putInt(0, length);
+        out.write(bytes);
+    }
+
+    private <T> T decode(byte[] payload, int length, Class<T> recordType) throws IOException {
+        return decoderFor(recordType).read(new DataInputStream(new ByteArrayInputStream(payload, 0, length)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> RecordDecoder<T> decoderFor(Class<? extends T> recordType) {
+        RecordDecoder<T> decoder = (RecordDecoder<T>) codecs.get(recordType);
+        if (decoder == null) {
+            throw new IllegalArgumentException("No codec for " + recordType.getSimpleName()
+                    + " in journal " + path.getFileName());
+        }
+        return decoder;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> RecordCodec<T> encoderFor(Class<? extends T> recordType) {
+        RecordDecoder<T> decoder = decoderFor(recordType);
+        if (!(decoder instanceof RecordCodec)) {
+            throw new IllegalArgumentException(recordType.getSimpleName() + " is only decoded from journal "
+                    + path.getFileName() + " and cannot be appended");
+        }
+        return (RecordCodec<T>) decoder;
+    }
+
+    private OutputStream openWriter() throws IOException {
+        if (writer != null && lock.isShared() && !openedStamp.isSameFile(FileStamp.of(path))) {
+            close(); // Compacted by another process; append to the new file
+        }
+        if (writer == null) {
+            output = new FileOutputStream(path.toFile(), true);
+            writer = new BufferedOutputStream(output, 8192);
+            openedStamp = FileStamp.of(path);
+        }
+        return writer;
+    }
+}
@@ -0,0 +1,277 @@
+package com.syos.frameworks.persistence;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * JSON collection with an in-memory hash index on a record key.
+ * The index is built from the file on first access and kept up to date by
+ * every mutation, so lookups are O(1) and need no disk I/O once warm.
+ * Insertion order is preserved so the file keeps its original ordering.
+ * Lookups hold the file's read lock and run in parallel; mutations hold its
+ * write lock for the whole update-and-persist step. In a shared data
+ * directory the index is rebuilt when another process has rewritten the file.
+ * When a {@link WriteAheadLog} is in use, a mutation only logs the changed
+ * record and the file is rewritten at the next checkpoint.
+ * Instances are shared per file through {@link JsonDataStore#keyed}.
+ */
+class JsonKeyedCollection<T> {
+    private final JsonDataStore dataStore;
+    private final String filename;
+    private final Type listType;
+    private final Function<T, String> keyOf;
+    private final DataFileLock lock;
+    private final WriteAheadLog wal;
+    private volatile Map<String, T> index;
+    private volatile FileStamp indexedStamp;
+    private volatile boolean writeThrough;
+    private long loggedLsn;
+
+    /**
+     * @param wal Log for mutations, or null to rewrite the file on every change
+     */
+    JsonKeyedCollection(JsonDataStore dataStore, String filename, Type listType, Function<T, String> keyOf,
+            WriteAheadLog wal) {
+        this.dataStore = dataStore;
+        this.filename = filename;
+        this.listType = listType;
+        this.keyOf = keyOf;
+        this.lock = dataStore.lockFor(filename);
+        this.wal = wal;
+    }
+
+    /**
+     * Makes every mutation reach disk before returning, even in resident mode.
+     * Used for data that must never be lost, such as reserved sequence blocks.
+     */
+    void setWriteThrough(boolean writeThrough) {
+        this.writeThrough = writeThrough;
+    }
+
+    Optional<T> get(String key) {
+        return read(index -> Optional.ofNullable(index.get(key)));
+    }
+
+    boolean contains(String key) {
+        return read(index -> index.containsKey(key));
+    }
+
+    List<T> values() {
+        return read(index -> new ArrayList<>(index.values()));
+    }
+
+    /**
+     * Adds a record whose key must not exist yet.
+     *
+     * @return false if a record with the same key already exists
+     */
+    boolean insert(T record) {
+        return write(index -> {
+            String key = keyOf.apply(record);
+            if (index.containsKey(key)) {
+                return false;
+            }
+            index.put(key, record);
+            persist(key, record);
+            return true;
+        });
+    }
+
+    /**
+     * Inserts a record or replaces the one with the same key.
+     */
+    void put(T record) {
+        write(index -> {
+            String key = keyOf.apply(record);
+            index.put(key, record);
+            persist(key, record);
+            return null;
+        });
+    }
+
+    /**
+     * Replaces the record with the same key.
+     *
+     * @return false if no such record exists
+     */
+    boolean replace(T record) {
+        return write(index -> {
+            String key = keyOf.apply(record);
+            if (!index.containsKey(key)) {
+                return false;
+            }
+            index.put(key, record);
+            persist(key, record);
+            return true;
+        });
+    }
+
+    /**
+     * Atomically replaces the record for a key with a value computed from the
+     * current record (null if there is none).
+     *
+     * @return the stored record
+     */
+    T compute(String key, UnaryOperator<T> remapping) {
+        return write(index -> {
+            T updated = remapping.apply(index.get(key));
+            index.put(key, updated);
+            persist(key, updated);
+            return updated;
+        });
+    }
+
+    /**
+     * Atomically replaces an existing record with a value computed from it.
+     * Nothing is written when there is no record for the key or the function
+     * returns null, so the function can act as the condition of a
+     * compare-and-set.
+     *
+     * @return false if nothing was replaced
+     */
+    boolean computeIfPresent(String key, UnaryOperator<T> remapping) {
+        return write(index -> {
+            T current = index.get(key);
+            T updated = current != null ? remapping.apply(current) : null;
+            if (updated == null) {
+                return false;
+            }
+            index.put(key, updated);
+            persist(key, updated);
+            return true;
+        });
+    }
+
+    boolean remove(String key) {
+        return write(index -> {
+            if (index.remove(key) == null) {
+                return false;
+            }
+            persist(key, null);
+            return true;
+        });
+    }
+
+    private <R> R read(Function<Map<String, T>, R> action) {
+        Map<String, T> loaded = index();
+        lock.readLock().lock();
+        try {
+            return action.apply(loaded);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the whole collection to its file. Called by the write-ahead log
+     * at a checkpoint.
+     *
+     * @return false if the file could not be written
+     */
+    boolean checkpoint() {
+        lock.writeLock().lock();
+        try {
+            return dataStore.writeSnapshot(filename, new ArrayList<>(index().values()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a mutation under the write lock. With a write-ahead log the caller
+     * then waits for its log entry to become durable, outside the lock so that
+     * concurrent mutations share one fsync.
+     */
+    private <R> R write(Function<Map<String, T>, R> action) {
+        R result;
+        long lsn;
+        lock.writeLock().lock();
+        try {
+            loggedLsn = 0;
+            result = action.apply(index());
+            lsn = loggedLsn;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (lsn > 0) {
+            wal.awaitDurable(lsn);
+        }
+        return result;
+    }
+
+    /**
+     * Loads the index on first use, and again whenever another process has
+     * changed the file. Loading takes the write lock, since a read lock cannot
+     * be upgraded.
+     */
+    private Map<String, T> index() {
+        Map<String, T> loaded = index;
+        if (loaded != null && !isStale()) {
+            return loaded;
+        }
+        lock.writeLock().lock();
+        try {
+            if (index == null || isStale()) {
+                indexedStamp = dataStore.stampOf(filename);
+                List<T> records = dataStore.load(filename, listType);
+                Map<String, T> built = new LinkedHashMap<>(Math.max(16, records.size() * 2));
+                for (T record : records) {
+                    // Lookups used to return the first match, so the first duplicate wins
+                    built.putIfAbsent(keyOf.apply(record), record);
+                }
+                if (wal != null) {
+                    replay(built);
+                }
+                index = built;
+            }
+            return index;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean isStale() {
+        return dataStore.isSharedDirectory() && !dataStore.stampOf(filename).equals(indexedStamp);
+    }
+
+    /**
+     * Applies the log entries that were not checkpointed before the last
+     * shutdown or crash.
+     */
+    private void replay(Map<String, T> built) {
+        Type recordType = ((ParameterizedType) listType).getActualTypeArguments()[0];
+        for (WriteAheadLog.Entry entry : wal.takeRecovered(this, filename)) {
+            if (entry.record == null) {
+                built.remove(entry.key);
+            } else {
+                built.put(entry.key, dataStore.getGson().fromJson(entry.record, recordType));
+            }
+        }
+    }
+
+    private void persist(String key, T record) {
+        if (wal != null) {
+            // Marked dirty first, so a checkpoint that rotates the log past
+            // this entry always rewrites the file
+            wal.markDirty(this);
+            loggedLsn = wal.append(filename, key, record);
+            return;
+        }
+        List<T> records = new ArrayList<>(index.values());
+        if (writeThrough) {
+            dataStore.saveNow(filename, records);
+        } else {
+            dataStore.save(filename, records);
+        }
+        if (dataStore.isSharedDirectory()) {
+            indexedStamp = dataStore.stampOf(filename);
+        }
+    }
+}
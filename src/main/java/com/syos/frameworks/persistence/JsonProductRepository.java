@@ -12,78 +12,52 @@ import java.util.Optional;
 /**
  * JSON-based implementation of ProductRepository.
  * Implements Repository Pattern for data access abstraction.
+ * Products are indexed by code in memory for O(1) lookups.
  */
 public class JsonProductRepository implements ProductRepository {
     private static final String FILENAME = "products.json";
-    private final JsonDataStore dataStore;
+    private final JsonKeyedCollection<ProductData> products;
     private final Type listType = new TypeToken<ArrayList<ProductData>>() {
     }.getType();
 
     public JsonProductRepository() {
-        this.dataStore = JsonDataStore.getInstance();
+        this.products = JsonDataStore.getInstance().keyed(FILENAME, listType, data -> data.code);
     }
 
     @Override
     public void save(Product product) {
-        List<ProductData> products = loadAll();
-
-        // Check if product already exists
-        boolean exists = products.stream()
-                .anyMatch(p -> p.code.equals(product.getCode()));
-
-        if (exists) {
+        if (!products.insert(toData(product))) {
             throw new IllegalArgumentException("Product with code " + product.getCode() + " already exists");
         }
-
-        products.add(toData(product));
-        dataStore.save(FILENAME, products);
     }
 
     @Override
     public Optional<Product> findByCode(String code) {
-        return loadAll().stream()
-                .filter(p -> p.code.equals(code))
-                .map(this::toEntity)
-                .findFirst();
+        return products.get(code).map(this::toEntity);
     }
 
     @Override
     public List<Product> findAll() {
-        return loadAll().stream()
+        return products.values().stream()
                 .map(this::toEntity)
                 .toList();
     }
 
     @Override
     public void update(Product product) {
-        List<ProductData> products = loadAll();
-
-        for (int i = 0; i < products.size(); i++) {
-            if (products.get(i).code.equals(product.getCode())) {
-                products.set(i, toData(product));
-                dataStore.save(FILENAME, products);
-                return;
-            }
+        if (!products.replace(toData(product))) {
+            throw new IllegalArgumentException("Product not found: " + product.getCode());
         }
-
-        throw new IllegalArgumentException("Product not found: " + product.getCode());
     }
 
     @Override
     public void delete(String code) {
-        List<ProductData> products = loadAll();
-        products.removeIf(p -> p.code.equals(code));
-        dataStore.save(FILENAME, products);
+        products.remove(code);
     }
 
     @Override
     public boolean exists(String code) {
-        return loadAll().stream()
-                .anyMatch(p -> p.code.equals(code));
-    }
-
-    private List<ProductData> loadAll() {
-        return dataStore.load(FILENAME, listType);
+        return products.contains(code);
     }
 
     private ProductData toData(Product product) {
@@ -0,0 +1,41 @@
+package com.syos.frameworks.persistence;
+
+import com.google.gson.reflect.TypeToken;
+import com.syos.usecases.repositories.SequenceRepository;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+
+/**
+ * JSON-based implementation of SequenceRepository.
+ * Reservations are written through to sequences.json immediately so that a
+ * crash can never hand out the same block twice.
+ */
+public class JsonSequenceRepository implements SequenceRepository {
+    private static final String FILENAME = "sequences.json";
+    private final JsonKeyedCollection<SequenceData> sequences;
+    private final Type listType = new TypeToken<ArrayList<SequenceData>>() {
+    }.getType();
+
+    public JsonSequenceRepository() {
+        this.sequences = JsonDataStore.getInstance().keyed(FILENAME, listType, data -> data.name);
+        this.sequences.setWriteThrough(true);
+    }
+
+    @Override
+    public int reserveBlock(String sequenceName, int blockSize, int minimumValue) {
+        SequenceData reserved = sequences.compute(sequenceName, current -> {
+            SequenceData data = new SequenceData();
+            data.name = sequenceName;
+            int start = current != null ? Math.max(current.nextValue, minimumValue) : minimumValue;
+            data.nextValue = start + blockSize;
+            return data;
+        });
+        return reserved.nextValue - blockSize;
+    }
+
+    private static class SequenceData {
+        String name;
+        int nextValue;
+    }
+}
@@ -3,80 +3,236 @@ package com.syos.frameworks.persistence;
 import com.google.gson.reflect.TypeToken;
 import com.syos.entities.StockBatch;
 import com.syos.usecases.repositories.StockBatchRepository;
+import com.syos.usecases.strategies.BatchOrder;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
  * JSON-based implementation of StockBatchRepository.
+ * Batches are kept in stock_batches.jsonl, a log of upserts and deletions
+ * keyed by batch ID (see {@link JsonUpsertLog}). Updating a batch appends a
+ * single line instead of rewriting every batch, and lookups by ID are served
+ * from memory. A legacy stock_batches.json file is migrated on first use.
+ * With -Dsyos.json.batchSnapshot=true, {@link #forEachBatch} scans a
+ * memory-mapped columnar snapshot (stock_batches.col) instead. With
+ * "stock_batches" listed in -Dsyos.json.binary the log is stored in binary
+ * (stock_batches.bin), converting an existing stock_batches.jsonl first.
+ * Depleted batches moved out by {@link #archiveDepleted} are appended to
+ * stock_batches_archive.jsonl (or .bin), which only {@link #findArchived}
+ * reads.
  */
 public class JsonStockBatchRepository implements StockBatchRepository {
-    private static final String FILENAME = "stock_batches.json";
+    private static final String FILENAME = "stock_batches.jsonl";
+    private static final String BINARY_FILENAME = "stock_batches.bin";
+    private static final String LEGACY_FILENAME = "stock_batches.json";
+    private static final String SNAPSHOT_FILENAME = "stock_batches.col";
+    private static final String ARCHIVE_FILENAME = "stock_batches_archive.jsonl";
+    private static final String BINARY_ARCHIVE_FILENAME = "stock_batches_archive.bin";
     private final JsonDataStore dataStore;
-    private final Type listType = new TypeToken<ArrayList<StockBatchData>>() {
+    private final JsonJournal journal;
+    private final JsonJournal archive;
+    private final JsonUpsertLog<StockBatchData> batches;
+    private final StockBatchSnapshot snapshot;
+    private final Type legacyListType = new TypeToken<ArrayList<StockBatchData>>() {
     }.getType();
 
     public JsonStockBatchRepository() {
-        this.dataStore = JsonDataStore.getInstance();
+        this(JsonDataStore.getInstance());
+    }
+
+    JsonStockBatchRepository(JsonDataStore dataStore) {
+        this.dataStore = dataStore;
+        boolean binary = dataStore.isBinary("stock_batches");
+        String filename = binary ? BINARY_FILENAME : FILENAME;
+        Map<Class<?>, RecordDecoder<?>> codecs = binary ? Map.of(StockBatchData.class, new StockBatchCodec()) : null;
+        this.batches = dataStore.upsertLog(filename, StockBatchData.class,
+                data -> data.batchId, data -> Boolean.TRUE.equals(data.deleted), codecs);
+        this.journal = binary ? dataStore.binaryJournal(filename, codecs) : dataStore.journal(filename);
+        this.archive = binary ? dataStore.binaryJournal(BINARY_ARCHIVE_FILENAME, codecs)
+                : dataStore.journal(ARCHIVE_FILENAME);
+        if (binary) {
+            dataStore.convertToBinary(FILENAME, journal, StockBatchData.class);
+            dataStore.convertToBinary(ARCHIVE_FILENAME, archive, StockBatchData.class);
+        }
+        this.snapshot = Boolean.getBoolean("syos.json.batchSnapshot")
+                ? new StockBatchSnapshot(dataStore.resolve(SNAPSHOT_FILENAME), journal.getPath(),
+                        batches::generation)
+                : null;
+        migrateLegacyFile();
+        reserveStoredBatchIds();
     }
 
     @Override
     public void save(StockBatch stockBatch) {
-        List<StockBatchData> batches = loadAll();
-        batches.add(toData(stockBatch));
-        dataStore.save(FILENAME, batches);
+        if (!batches.insert(toData(stockBatch))) {
+            throw new IllegalArgumentException("Stock batch with ID " + stockBatch.getBatchId() + " already exists");
+        }
+        // A batch code typed in by hand must not be generated later
+        StockBatch.reserveBatchId(stockBatch.getBatchId());
     }
 
     @Override
     public Optional<StockBatch> findById(String batchId) {
-        return loadAll().stream()
-                .filter(b -> b.batchId.equals(batchId))
-                .map(this::toEntity)
-                .findFirst();
+        return batches.get(batchId).map(this::toEntity);
     }
 
     @Override
     public List<StockBatch> findByProductCode(String productCode) {
-        return loadAll().stream()
-                .filter(b -> b.productCode.equals(productCode))
+        return batches.values().stream()
+                .filter(data -> data.productCode.equals(productCode))
                 .map(this::toEntity)
                 .toList();
     }
 
     @Override
     public List<StockBatch> findAll() {
-        return loadAll().stream()
+        return batches.values().stream()
                 .map(this::toEntity)
                 .toList();
     }
 
     @Override
     public void update(StockBatch stockBatch) {
-        List<StockBatchData> batches = loadAll();
-
-        for (int i = 0; i < batches.size(); i++) {
-            if (batches.get(i).batchId.equals(stockBatch.getBatchId())) {
-                batches.set(i, toData(stockBatch));
-                dataStore.save(FILENAME, batches);
-                return;
-            }
+        if (!batches.replace(toData(stockBatch))) {
+            throw new IllegalArgumentException("Stock batch not found: " + stockBatch.getBatchId());
         }
+    }
 
-        throw new IllegalArgumentException("Stock batch not found: " + stockBatch.getBatchId());
+    @Override
+    public void updateAll(Collection<StockBatch> stockBatches) {
+        if (stockBatches.isEmpty()) {
+            return;
+        }
+        List<StockBatchData> records = new ArrayList<>(stockBatches.size());
+        for (StockBatch stockBatch : stockBatches) {
+            records.add(toData(stockBatch));
+        }
+        String missing = batches.replaceAll(records);
+        if (missing != null) {
+            throw new IllegalArgumentException("Stock batch not found: " + missing);
+        }
     }
 
     @Override
     public void delete(String batchId) {
-        List<StockBatchData> batches = loadAll();
-        batches.removeIf(b -> b.batchId.equals(batchId));
-        dataStore.save(FILENAME, batches);
+        StockBatchData tombstone = new StockBatchData();
+        tombstone.batchId = batchId;
+        tombstone.deleted = Boolean.TRUE;
+        batches.remove(tombstone);
+    }
+
+    /**
+     * Selects, reduces and writes the product's batches under the log's write
+     * lock, so concurrent sales never draw on the same stock.
+     */
+    @Override
+    public List<StockBatch> depleteStock(String productCode, int quantity, BatchOrder order) {
+        List<StockBatch> depleted = new ArrayList<>();
+        batches.transact(live -> {
+            List<StockBatch> productBatches = live.stream()
+                    .filter(data -> data.productCode.equals(productCode))
+                    .map(this::toEntity)
+                    .toList();
+            depleted.addAll(StockBatchRepository.drawFrom(productBatches, quantity, order));
+            return depleted.stream().map(this::toData).toList();
+        });
+        return depleted;
+    }
+
+    /**
+     * Appends the depleted batches to the archive, then tombstones them in
+     * the live log. A crash in between leaves a batch in both; the next run
+     * archives it again and {@link #findArchived} reports it once.
+     */
+    @Override
+    public synchronized int archiveDepleted() {
+        List<StockBatchData> depleted = batches.values().stream()
+                .filter(data -> data.quantity == 0)
+                .toList();
+        if (depleted.isEmpty()) {
+            return 0;
+        }
+        archive.appendAll(depleted);
+
+        List<StockBatchData> tombstones = new ArrayList<>(depleted.size());
+        for (StockBatchData data : depleted) {
+            StockBatchData tombstone = new StockBatchData();
+            tombstone.batchId = data.batchId;
+            tombstone.deleted = Boolean.TRUE;
+            tombstones.add(tombstone);
+        }
+        String missing = batches.removeAll(tombstones);
+        if (missing != null) {
+            throw new IllegalStateException("Stock batch deleted while archiving: " + missing);
+        }
+        return depleted.size();
     }
 
-    private List<StockBatchData> loadAll() {
-        return dataStore.load(FILENAME, listType);
+    @Override
+    public List<StockBatch> findArchived() {
+        Map<String, StockBatchData> archived = new LinkedHashMap<>();
+        archive.scanFrom(0, StockBatchData.class, (offset, data) -> {
+            if (batches.get(data.batchId).isEmpty()) {
+                archived.putIfAbsent(data.batchId, data);
+            }
+        });
+        return archived.values().stream()
+                .sorted(Comparator.comparing((StockBatchData data) -> data.productCode)
+                        .thenComparing(data -> data.purchaseDate))
+                .map(this::toEntity)
+                .toList();
+    }
+
+    @Override
+    public void forEachBatch(BatchVisitor visitor) {
+        if (snapshot == null) {
+            StockBatchRepository.super.forEachBatch(visitor);
+            return;
+        }
+        journal.flushToFile();
+        snapshot.refresh(rows -> {
+            for (StockBatchData data : batches.values()) {
+                rows.visit(data.productCode,
+                        (int) LocalDate.parse(data.purchaseDate).toEpochDay(),
+                        data.quantity,
+                        (int) LocalDate.parse(data.expiryDate).toEpochDay());
+            }
+        });
+        snapshot.forEach(visitor);
+    }
+
+    private void migrateLegacyFile() {
+        if (journal.exists()) {
+            return;
+        }
+        List<StockBatchData> legacyBatches = dataStore.load(LEGACY_FILENAME, legacyListType);
+        if (legacyBatches.isEmpty()) {
+            return;
+        }
+        batches.putAll(legacyBatches);
+        dataStore.archive(LEGACY_FILENAME);
+    }
+
+    /**
+     * Generated batch IDs restart at B1 in every run, so move the generator
+     * past the IDs of live and archived batches.
+     */
+    private void reserveStoredBatchIds() {
+        for (StockBatchData data : batches.values()) {
+            StockBatch.reserveBatchId(data.batchId);
+        }
+        archive.scanFrom(0, StockBatchData.class, (offset, data) -> StockBatch.reserveBatchId(data.batchId));
     }
 
     private StockBatchData toData(StockBatch batch) {
@@ -90,25 +246,64 @@ public class JsonStockBatchRepository implements StockBatchRepository {
     }
 
     private StockBatch toEntity(StockBatchData data) {
+        // Use constructor with batch ID to preserve the stored ID. A depleted
+        // batch cannot be constructed with quantity 0, so it is built with
+        // one unit and then reduced.
         StockBatch batch = new StockBatch(
+                data.batchId,
                 data.productCode,
                 LocalDate.parse(data.purchaseDate),
-                data.quantity,
+                Math.max(data.quantity, 1),
                 LocalDate.parse(data.expiryDate));
 
-        int difference = batch.getQuantity() - data.quantity;
-        if (difference > 0) {
-            batch.reduceQuantity(difference);
+        if (data.quantity == 0) {
+            batch.reduceQuantity(1);
         }
 
         return batch;
     }
 
-    private static class StockBatchData {
+    static class StockBatchData {
         String batchId;
         String productCode;
         String purchaseDate;
         int quantity;
         String expiryDate;
+        Boolean deleted;
+    }
+
+    /**
+     * Binary layout of a batch: the ID and a deleted flag, followed by the
+     * remaining fields unless the record is a tombstone.
+     */
+    static class StockBatchCodec implements RecordCodec<StockBatchData> {
+        @Override
+        public void write(StockBatchData data, DataOutputStream out) throws IOException {
+            BinaryEncoding.writeString(out, data.batchId);
+            boolean deleted = Boolean.TRUE.equals(data.deleted);
+            out.writeBoolean(deleted);
+            if (deleted) {
+                return;
+            }
+            BinaryEncoding.writeString(out, data.productCode);
+            BinaryEncoding.writeDate(out, data.purchaseDate);
+            BinaryEncoding.writeVarInt(out, data.quantity);
+            BinaryEncoding.writeDate(out, data.expiryDate);
+        }
+
+        @Override
+        public StockBatchData read(DataInputStream in) throws IOException {
+            StockBatchData data = new StockBatchData();
+            data.batchId = BinaryEncoding.readString(in);
+            if (in.readBoolean()) {
+                data.deleted = Boolean.TRUE;
+                return data;
+            }
+            data.productCode = BinaryEncoding.readString(in);
+            data.purchaseDate = BinaryEncoding.readDate(in);
+            data.quantity = BinaryEncoding.readVarInt(in);
+            data.expiryDate = BinaryEncoding.readDate(in);
+            return data;
+        }
     }
 }
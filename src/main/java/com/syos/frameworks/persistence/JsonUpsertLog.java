@@ -0,0 +1,297 @@
+package com.syos.frameworks.persistence;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Keyed collection stored as an append-only log of upserts and tombstones.
+ * Each mutation appends one line to a {@link JsonJournal} instead of
+ * rewriting the file, and the latest record for a key wins. The live records
+ * are replayed into an in-memory hash index on first access, so lookups are
+ * O(1). Once superseded records outnumber live ones the log is compacted down
+ * to the live records. Lookups hold the journal file's read lock and run in
+ * parallel; mutations hold its write lock. In a shared data directory, lines
+ * appended by other processes are replayed incrementally before each access,
+ * and the log is replayed from scratch after another process compacts it.
+ * A generation counter advances with every record applied to the index, so
+ * derived views can tell that the live set changed even when the file's size
+ * and modification time do not. Instances are shared per file through {@link JsonDataStore#upsertLog}.
+ */
+class JsonUpsertLog<T> {
+    static final int MIN_COMPACTION_GARBAGE = 1024;
+
+    private final JsonJournal journal;
+    private final DataFileLock lock;
+    private final Class<T> recordType;
+    private final Function<T, String> keyOf;
+    private final Predicate<T> isTombstone;
+    private volatile Map<String, T> index;
+    private int garbageRecords;
+    private volatile long generation;
+    // Shared directories only: journal state the index reflects
+    private volatile FileStamp indexedStamp;
+    private long indexedUpTo;
+
+    JsonUpsertLog(JsonJournal journal, DataFileLock lock, Class<T> recordType,
+            Function<T, String> keyOf, Predicate<T> isTombstone) {
+        this.journal = journal;
+        this.lock = lock;
+        this.recordType = recordType;
+        this.keyOf = keyOf;
+        this.isTombstone = isTombstone;
+    }
+
+    Optional<T> get(String key) {
+        Map<String, T> loaded = index();
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(loaded.get(key));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    List<T> values() {
+        Map<String, T> loaded = index();
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(loaded.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of records applied to the index so far, after
+     * catching up with the journal. It only grows within a process.
+     */
+    long generation() {
+        index();
+        return generation;
+    }
+
+    /**
+     * Appends a record, replacing any earlier record with the same key.
+     */
+    void put(T record) {
+        long sequence;
+        lock.writeLock().lock();
+        try {
+            sequence = append(record);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        journal.awaitDurable(sequence);
+    }
+
+    /**
+     * Appends a record only if no live record with the same key exists.
+     *
+     * @return false if such a record already exists
+     */
+    boolean insert(T record) {
+        return appendIf(record, false);
+    }
+
+    /**
+     * Appends a record only if a live record with the same key exists.
+     *
+     * @return false if no such record exists
+     */
+    boolean replace(T record) {
+        return appendIf(record, true);
+    }
+
+    private boolean appendIf(T record, boolean mustExist) {
+        long sequence;
+        lock.writeLock().lock();
+        try {
+            if (index().containsKey(keyOf.apply(record)) != mustExist) {
+                return false;
+            }
+            sequence = append(record);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        journal.awaitDurable(sequence);
+        return true;
+    }
+
+    /**
+     * Replaces several existing records with one append and one fsync. Nothing
+     * is written unless every key has a live record.
+     *
+     * @return the key of the first record that does not exist, or null if all
+     *         were replaced
+     */
+    String replaceAll(List<T> records) {
+        lock.writeLock().lock();
+        try {
+            Map<String, T> loaded = index();
+            for (T record : records) {
+                String key = keyOf.apply(record);
+                if (!loaded.containsKey(key)) {
+                    return key;
+                }
+            }
+            journal.appendAll(records);
+            records.forEach(this::apply);
+            compactIfNeeded();
+            markIndexed();
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Hands the live records to the given change and appends the records it
+     * returns, all under the write lock, so no other writer can change the
+     * records between the read and the append. Nothing is written if the
+     * change returns an empty list.
+     *
+     * @return the appended records
+     */
+    List<T> transact(Function<List<T>, List<T>> change) {
+        lock.writeLock().lock();
+        try {
+            List<T> records = change.apply(new ArrayList<>(index().values()));
+            if (records.isEmpty()) {
+                return records;
+            }
+            journal.appendAll(records);
+            records.forEach(this::apply);
+            compactIfNeeded();
+            markIndexed();
+            return records;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a tombstone for the record's key.
+     *
+     * @return false if no live record with that key exists
+     */
+    boolean remove(T tombstone) {
+        return replace(tombstone);
+    }
+
+    /**
+     * Appends tombstones for several keys with one append and one fsync.
+     *
+     * @return the key of the first record that does not exist, or null if all
+     *         were removed
+     */
+    String removeAll(List<T> tombstones) {
+        return replaceAll(tombstones);
+    }
+
+    /**
+     * Writes an initial set of records in one batch. The first record wins
+     * when several share a key.
+     */
+    void putAll(List<T> records) {
+        Map<String, T> unique = new LinkedHashMap<>();
+        for (T record : records) {
+            unique.putIfAbsent(keyOf.apply(record), record);
+        }
+        List<T> values = new ArrayList<>(unique.values());
+
+        lock.writeLock().lock();
+        try {
+            index();
+            journal.appendAll(values);
+            values.forEach(this::apply);
+            markIndexed();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a record while the write lock is held. The caller waits for it
+     * to become durable after releasing the lock, so concurrent writers share
+     * one fsync.
+     */
+    private long append(T record) {
+        index();
+        long sequence = journal.appendBuffered(record);
+        apply(record);
+        compactIfNeeded();
+        markIndexed();
+        return sequence;
+    }
+
+    /**
+     * Replays the journal on first use, and catches up with other processes'
+     * appends in a shared directory. Loading takes the write lock, since a
+     * read lock cannot be upgraded.
+     */
+    private Map<String, T> index() {
+        Map<String, T> loaded = index;
+        if (loaded != null && !isStale()) {
+            return loaded;
+        }
+        lock.writeLock().lock();
+        try {
+            if (index != null && isStale() && indexedStamp.isSameFile(currentStamp())) {
+                indexedUpTo = journal.scanFrom(indexedUpTo, recordType, (offset, record) -> apply(record));
+                indexedStamp = currentStamp();
+            } else if (index == null || isStale()) {
+                index = new LinkedHashMap<>();
+                garbageRecords = 0;
+                indexedUpTo = journal.scanFrom(0, recordType, (offset, record) -> apply(record));
+                indexedStamp = currentStamp();
+            }
+            return index;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean isStale() {
+        return lock.isShared() && !currentStamp().equals(indexedStamp);
+    }
+
+    private FileStamp currentStamp() {
+        return FileStamp.of(journal.getPath());
+    }
+
+    /**
+     * Records that the index covers the whole journal. Called while holding
+     * the write lock after this process appended, so no other writer can have
+     * added lines in between.
+     */
+    private void markIndexed() {
+        if (lock.isShared()) {
+            journal.flushToFile();
+            indexedStamp = currentStamp();
+            indexedUpTo = indexedStamp.size();
+        }
+    }
+
+    private void apply(T record) {
+        generation++;
+        String key = keyOf.apply(record);
+        if (isTombstone.test(record)) {
+            // Both the tombstone and the record it deletes are garbage
+            garbageRecords += index.remove(key) != null ? 2 : 1;
+        } else if (index.put(key, record) != null) {
+            garbageRecords++;
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (garbageRecords >= MIN_COMPACTION_GARBAGE && garbageRecords > index.size()) {
+            journal.rewrite(new ArrayList<>(index.values()));
+            garbageRecords = 0;
+        }
+    }
+}
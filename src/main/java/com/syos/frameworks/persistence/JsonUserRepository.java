@@ -25,9 +25,7 @@ public class JsonUserRepository implements UserRepository {
 
     @Override
     public void save(User user) {
-        List<UserData> users = loadAll();
-        users.add(toData(user));
-        dataStore.save(FILENAME, users);
+        dataStore.<UserData, Boolean>transact(FILENAME, listType, users -> users.add(toData(user)));
     }
 
     @Override
@@ -0,0 +1,13 @@
+package com.syos.frameworks.persistence;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Hand-written binary encoding of one record type, used instead of Gson for
+ * journals opened with {@link JsonDataStore#binaryJournal}. Codecs avoid
+ * reflection entirely; {@link BinaryEncoding} provides the field encodings.
+ */
+public interface RecordCodec<T> extends RecordDecoder<T> {
+    void write(T record, DataOutputStream out) throws IOException;
+}
@@ -0,0 +1,15 @@
+package com.syos.frameworks.persistence;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Reads one record type from the binary frames of a journal opened with
+ * {@link JsonDataStore#binaryJournal}. A decoder may read a projection of a
+ * record (for example just its key fields) by reading a prefix of the
+ * encoded fields and ignoring the rest; record types that are also appended
+ * need a full {@link RecordCodec}.
+ */
+public interface RecordDecoder<T> {
+    T read(DataInputStream in) throws IOException;
+}
@@ -0,0 +1,260 @@
+package com.syos.frameworks.persistence;
+
+import com.syos.usecases.repositories.StockBatchRepository.BatchVisitor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Read-optimized columnar snapshot of the stock batches, read through a
+ * memory-mapped file. Only the columns that reports and stock selection scan are
+ * kept, as fixed-width ints: dictionary-encoded product codes, purchase and
+ * expiry dates as epoch days, and quantities. A scan walks the columns with
+ * absolute reads and allocates nothing per batch.
+ *
+ * <p>File layout (big-endian):
+ * <pre>
+ * int magic, int version, long sourceSize, long sourceModified,
+ * long sourceGeneration, int rowCount, int dictionarySize,
+ * dictionarySize x (short length, UTF-8 bytes), padding to 4 bytes,
+ * int[rowCount] codeIds, int[rowCount] purchaseDays,
+ * int[rowCount] quantities, int[rowCount] expiryDays
+ * </pre>
+ * The size and modification time of the source journal, and the generation
+ * of the upsert log read from it, are stored in the header; the snapshot is
+ * rebuilt whenever they no longer match. The generation catches writes that
+ * leave size and modification time unchanged, such as a same-size update
+ * within the file system's timestamp resolution.
+ *
+ * <p>A mapped file cannot be replaced on every platform (Windows refuses
+ * while the mapping is alive, and a mapping is only released when it is
+ * garbage collected). If the rebuilt snapshot cannot be moved into place it
+ * is served from the heap instead, and the file is replaced on a later
+ * rebuild.
+ */
+class StockBatchSnapshot {
+    private static final int MAGIC = 0x53594243; // "SYBC"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4 + 4;
+
+    private final Path path;
+    private final Path source;
+    private final LongSupplier sourceGeneration;
+    private ByteBuffer buffer;
+    private String[] dictionary;
+    private int rowCount;
+    private int columnsOffset;
+    private long sourceSize;
+    private long sourceModified;
+    private long generation;
+
+    /**
+     * @param sourceGeneration Generation of the upsert log the rows come from
+     */
+    StockBatchSnapshot(Path path, Path source, LongSupplier sourceGeneration) {
+        this.path = path;
+        this.source = source;
+        this.sourceGeneration = sourceGeneration;
+    }
+
+    /**
+     * Rebuilds the snapshot from the given rows if the source has changed
+     * since it was written.
+     *
+     * @param rows Replays every live batch into the visitor it is given
+     */
+    synchronized void refresh(Consumer<BatchVisitor> rows) {
+        long[] stamp = sourceStamp();
+        if (buffer == null && Files.exists(path)) {
+            map();
+        }
+        if (buffer != null && sourceSize == stamp[0] && sourceModified == stamp[1] && generation == stamp[2]) {
+            return;
+        }
+        // The stamp is taken before the rows are read, so a concurrent write
+        // can only make the snapshot look stale, never current
+        ByteBuffer built = build(stamp, rows);
+        buffer = null;
+        if (replaceFile(built)) {
+            map();
+        } else {
+            load(built);
+        }
+    }
+
+    synchronized void forEach(BatchVisitor visitor) {
+        if (buffer == null) {
+            return;
+        }
+        int codes = columnsOffset;
+        int purchaseDays = codes + rowCount * 4;
+        int quantities = purchaseDays + rowCount * 4;
+        int expiryDays = quantities + rowCount * 4;
+        for (int i = 0; i < rowCount; i++) {
+            int offset = i * 4;
+            visitor.visit(dictionary[buffer.getInt(codes + offset)],
+                    buffer.getInt(purchaseDays + offset),
+                    buffer.getInt(quantities + offset),
+                    buffer.getInt(expiryDays + offset));
+        }
+    }
+
+    private long[] sourceStamp() {
+        long currentGeneration = sourceGeneration.getAsLong();
+        try {
+            if (!Files.exists(source)) {
+                return new long[] { 0, 0, currentGeneration };
+            }
+            return new long[] { Files.size(source), Files.getLastModifiedTime(source).toMillis(),
+                    currentGeneration };
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to stat " + source.getFileName(), e);
+        }
+    }
+
+    private ByteBuffer build(long[] stamp, Consumer<BatchVisitor> rows) {
+        Map<String, Integer> codeIds = new HashMap<>();
+        ColumnBuilder builder = new ColumnBuilder();
+        rows.accept((productCode, purchaseEpochDay, quantity, expiryEpochDay) -> builder.add(
+                codeIds.computeIfAbsent(productCode, code -> codeIds.size()),
+                purchaseEpochDay, quantity, expiryEpochDay));
+
+        byte[][] codes = new byte[codeIds.size()][];
+        codeIds.forEach((code, id) -> codes[id] = code.getBytes(StandardCharsets.UTF_8));
+        int dictionaryBytes = 0;
+        for (byte[] code : codes) {
+            dictionaryBytes += 2 + code.length;
+        }
+        int columns = align(HEADER_SIZE + dictionaryBytes);
+
+        ByteBuffer out = ByteBuffer.allocate(columns + builder.size * 16);
+        out.putInt(MAGIC).putInt(VERSION).putLong(stamp[0]).putLong(stamp[1]).putLong(stamp[2])
+                .putInt(builder.size).putInt(codes.length);
+        for (byte[] code : codes) {
+            out.putShort((short) code.length).put(code);
+        }
+        out.position(columns);
+        for (int[] column : builder.columns()) {
+            out.asIntBuffer().put(column, 0, builder.size);
+            out.position(out.position() + builder.size * 4);
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file and moves it over the old one.
+     *
+     * @return false if the file could not be written or replaced
+     */
+    private boolean replaceFile(ByteBuffer contents) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer out = contents.duplicate();
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // Best effort cleanup
+                }
+            }
+            System.err.println("Failed to write snapshot " + path.getFileName() + ", keeping it in memory: "
+                    + e.getMessage());
+            return false;
+        }
+    }
+
+    private void map() {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map snapshot " + path.getFileName(), e);
+        }
+    }
+
+    /**
+     * Reads the header and dictionary of a snapshot and serves scans from it.
+     */
+    private void load(ByteBuffer contents) {
+        if (contents.limit() < HEADER_SIZE || contents.getInt(0) != MAGIC || contents.getInt(4) != VERSION) {
+            buffer = null;
+            return; // Unknown or truncated file, rebuilt on the next refresh
+        }
+        sourceSize = contents.getLong(8);
+        sourceModified = contents.getLong(16);
+        generation = contents.getLong(24);
+        rowCount = contents.getInt(32);
+        dictionary = new String[contents.getInt(36)];
+        int position = HEADER_SIZE;
+        for (int i = 0; i < dictionary.length; i++) {
+            int length = contents.getShort(position) & 0xffff;
+            byte[] code = new byte[length];
+            contents.get(position + 2, code);
+            dictionary[i] = new String(code, StandardCharsets.UTF_8);
+            position += 2 + length;
+        }
+        columnsOffset = align(position);
+        buffer = contents;
+    }
+
+    private static int align(int position) {
+        return (position + 3) & ~3;
+    }
+
+    /**
+     * Growable int columns used while building a snapshot.
+     */
+    private static class ColumnBuilder {
+        int[] codeIds = new int[1024];
+        int[] purchaseDays = new int[1024];
+        int[] quantities = new int[1024];
+        int[] expiryDays = new int[1024];
+        int size;
+
+        void add(int codeId, int purchaseDay, int quantity, int expiryDay) {
+            if (size == codeIds.length) {
+                int capacity = size * 2;
+                codeIds = Arrays.copyOf(codeIds, capacity);
+                purchaseDays = Arrays.copyOf(purchaseDays, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+                expiryDays = Arrays.copyOf(expiryDays, capacity);
+            }
+            codeIds[size] = codeId;
+            purchaseDays[size] = purchaseDay;
+            quantities[size] = quantity;
+            expiryDays[size] = expiryDay;
+            size++;
+        }
+
+        int[][] columns() {
+            return new int[][] { codeIds, purchaseDays, quantities, expiryDays };
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.syos.frameworks.persistence;
+
+/**
+ * On-disk encodings for JSON collection files.
+ * Reads detect the encoding from the file itself, so files written in any
+ * format (including the legacy pretty-printed files) can always be loaded.
+ */
+public enum StorageFormat {
+    /** Indented JSON, the original format. Easy to read, roughly twice the size. */
+    PRETTY,
+    /** JSON without whitespace. */
+    COMPACT,
+    /** Compact JSON compressed with gzip. */
+    GZIP
+}
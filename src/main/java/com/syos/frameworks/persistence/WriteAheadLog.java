@@ -0,0 +1,295 @@
+package com.syos.frameworks.persistence;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+
+import java.io.*;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-ahead log shared by the hash-indexed JSON collections.
+ *
+ * <p>A mutation appends one line (collection, operation, key, record) to the
+ * current log segment and only updates the collection in memory; the
+ * collection file itself is rewritten at the next checkpoint. Callers wait in
+ * {@link #awaitDurable} until their entry has been forced to disk. Waiters are
+ * group committed: one thread forces the segment for every entry appended so
+ * far while the others wait for it, so a single fsync acknowledges many
+ * concurrent mutations.
+ *
+ * <p>A checkpoint rotates to a new segment, rewrites every collection changed
+ * since the previous checkpoint and then deletes the older segments. Entries
+ * are full records, so replaying an entry that a checkpoint already covers is
+ * harmless. On startup the remaining segments are read back and each
+ * collection replays its entries when it is first loaded. Entries of
+ * collections that are not loaded before the next checkpoint are carried
+ * forward into the new segment.
+ */
+class WriteAheadLog {
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".jsonl";
+
+    private final Path directory;
+    private final Gson gson;
+    private final Object syncLock = new Object();
+    private final Map<String, List<Entry>> recovered = new LinkedHashMap<>();
+    private final Set<JsonKeyedCollection<?>> dirtyCollections = ConcurrentHashMap.newKeySet();
+    private final List<Path> segments = new ArrayList<>();
+    private FileOutputStream output;
+    private Writer writer;
+    private long segmentNumber;
+    private long lastLsn;
+    private volatile long durableLsn;
+    private boolean appendedSinceRotation;
+
+    WriteAheadLog(Path directory, Gson gson) {
+        this.directory = directory;
+        this.gson = gson;
+        recover();
+    }
+
+    /**
+     * Appends an entry for a collection and returns its log sequence number.
+     * The entry is not durable until {@link #awaitDurable} returns.
+     *
+     * @param record The new record, or null if the key was removed
+     */
+    synchronized long append(String filename, String key, Object record) {
+        Entry entry = new Entry();
+        entry.lsn = ++lastLsn;
+        entry.file = filename;
+        entry.key = key;
+        entry.record = record != null ? gson.toJsonTree(record) : null;
+        try {
+            writeEntry(entry);
+            appendedSinceRotation = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to write-ahead log", e);
+        }
+        return entry.lsn;
+    }
+
+    /**
+     * Blocks until the entry with the given sequence number is on disk.
+     */
+    void awaitDurable(long lsn) {
+        if (durableLsn >= lsn) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (durableLsn >= lsn) {
+                return; // Forced by the previous group
+            }
+            long target;
+            FileOutputStream segment;
+            synchronized (this) {
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to flush write-ahead log", e);
+                }
+                target = lastLsn;
+                segment = output;
+            }
+            // Force outside the append lock so the next group can build up
+            try {
+                segment.getChannel().force(false);
+            } catch (ClosedChannelException e) {
+                // Rotated meanwhile; a segment is forced before it is closed
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to sync write-ahead log", e);
+            }
+            durableLsn = Math.max(durableLsn, target);
+        }
+    }
+
+    /**
+     * Hands over the entries recovered for a collection, in log order, and
+     * marks the collection dirty so the next checkpoint writes them to its
+     * file. Called once, when the collection is first loaded.
+     */
+    synchronized List<Entry> takeRecovered(JsonKeyedCollection<?> collection, String filename) {
+        List<Entry> entries = recovered.remove(filename);
+        if (entries == null) {
+            return List.of();
+        }
+        dirtyCollections.add(collection);
+        return entries;
+    }
+
+    void markDirty(JsonKeyedCollection<?> collection) {
+        dirtyCollections.add(collection);
+    }
+
+    /**
+     * Writes every collection changed since the last checkpoint and discards
+     * the log segments they cover.
+     */
+    void checkpoint() {
+        List<Path> obsolete;
+        List<JsonKeyedCollection<?>> dirty;
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (dirtyCollections.isEmpty() && !appendedSinceRotation && segments.size() == 1) {
+                    return; // Nothing logged since the last checkpoint
+                }
+                obsolete = new ArrayList<>(segments);
+                dirty = new ArrayList<>(dirtyCollections);
+                dirtyCollections.removeAll(dirty);
+                try {
+                    rotate();
+                } catch (IOException e) {
+                    System.err.println("Failed to rotate write-ahead log: " + e.getMessage());
+                    dirtyCollections.addAll(dirty);
+                    return;
+                }
+            }
+        }
+
+        // Snapshots are taken after the rotation, so they include every entry
+        // of the obsolete segments
+        boolean complete = true;
+        for (JsonKeyedCollection<?> collection : dirty) {
+            if (!collection.checkpoint()) {
+                dirtyCollections.add(collection);
+                complete = false;
+            }
+        }
+        if (!complete) {
+            // Keep the old segments until a later checkpoint succeeds
+            synchronized (this) {
+                segments.addAll(0, obsolete);
+            }
+            return;
+        }
+        for (Path segment : obsolete) {
+            try {
+                Files.deleteIfExists(segment);
+            } catch (IOException e) {
+                System.err.println("Failed to delete " + segment.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Starts a new segment and copies the recovered entries that no
+     * collection has claimed yet into it.
+     */
+    private void rotate() throws IOException {
+        closeSegment();
+        segments.clear();
+        openSegment();
+        for (List<Entry> entries : recovered.values()) {
+            for (Entry entry : entries) {
+                writeEntry(entry);
+            }
+        }
+        writer.flush();
+        output.getChannel().force(false);
+        durableLsn = lastLsn;
+        appendedSinceRotation = false;
+    }
+
+    private void recover() {
+        List<Path> existing = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            files.forEach(existing::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list write-ahead log segments", e);
+        }
+        existing.sort((a, b) -> Long.compare(segmentNumberOf(a), segmentNumberOf(b)));
+
+        for (Path segment : existing) {
+            segmentNumber = Math.max(segmentNumber, segmentNumberOf(segment));
+            readSegment(segment);
+            segments.add(segment);
+        }
+        try {
+            openSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open write-ahead log", e);
+        }
+    }
+
+    private void readSegment(Path segment) {
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                Entry entry;
+                try {
+                    entry = gson.fromJson(line, Entry.class);
+                } catch (JsonParseException e) {
+                    // A torn final write: its caller was never acknowledged
+                    break;
+                }
+                recovered.computeIfAbsent(entry.file, f -> new ArrayList<>()).add(entry);
+                lastLsn = Math.max(lastLsn, entry.lsn);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + segment.getFileName(), e);
+        }
+        durableLsn = lastLsn;
+    }
+
+    private void openSegment() throws IOException {
+        Path segment = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, ++segmentNumber, SEGMENT_SUFFIX));
+        output = new FileOutputStream(segment.toFile(), true);
+        writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        segments.add(segment);
+    }
+
+    private void closeSegment() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+            output.getChannel().force(false);
+            writer.close();
+            durableLsn = lastLsn;
+        } catch (IOException e) {
+            System.err.println("Failed to close write-ahead log: " + e.getMessage());
+        }
+        writer = null;
+        output = null;
+    }
+
+    private void writeEntry(Entry entry) throws IOException {
+        writer.write(gson.toJson(entry));
+        writer.write('\n');
+    }
+
+    private static long segmentNumberOf(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * One logged mutation. A null record means the key was removed.
+     */
+    static class Entry {
+        long lsn;
+        String file;
+        String key;
+        JsonElement record;
+    }
+}
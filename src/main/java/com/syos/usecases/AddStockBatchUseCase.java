@@ -9,6 +9,9 @@ import com.syos.usecases.repositories.ProductRepository;
 import com.syos.usecases.repositories.StockBatchRepository;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * Use case for adding new stock batches.
@@ -16,24 +19,47 @@ import java.time.LocalDate;
  * stocked
  * according to the code, date of purchase, amount of quantity received, and
  * date of expiry"
+ * The batch and the inventory update are stored as one {@link UnitOfWork}.
  */
 public class AddStockBatchUseCase {
     private final ProductRepository productRepository;
     private final StockBatchRepository stockBatchRepository;
     private final InventoryRepository inventoryRepository;
     private final InventorySubject inventorySubject;
+    private final UnitOfWork unitOfWork;
 
     public AddStockBatchUseCase(ProductRepository productRepository,
             StockBatchRepository stockBatchRepository,
             InventoryRepository inventoryRepository,
             InventorySubject inventorySubject) {
+        this(productRepository, stockBatchRepository, inventoryRepository, inventorySubject, UnitOfWork.NONE);
+    }
+
+    public AddStockBatchUseCase(ProductRepository productRepository,
+            StockBatchRepository stockBatchRepository,
+            InventoryRepository inventoryRepository,
+            InventorySubject inventorySubject,
+            UnitOfWork unitOfWork) {
         this.productRepository = productRepository;
         this.stockBatchRepository = stockBatchRepository;
         this.inventoryRepository = inventoryRepository;
         this.inventorySubject = inventorySubject;
+        this.unitOfWork = unitOfWork;
     }
 
     public StockBatch execute(String productCode, int quantity, LocalDate expiryDate) throws StockException {
+        List<Inventory> changedInventories = new ArrayList<>();
+        StockBatch stockBatch = unitOfWork.execute(
+                () -> addStockBatch(productCode, quantity, expiryDate, changedInventories));
+
+        for (Inventory inventory : changedInventories) {
+            inventorySubject.notifyInventoryChanged(inventory);
+        }
+        return stockBatch;
+    }
+
+    private StockBatch addStockBatch(String productCode, int quantity, LocalDate expiryDate,
+            List<Inventory> changedInventories) throws StockException {
         // Validate product exists
         Product product = productRepository.findByCode(productCode)
                 .orElseThrow(() -> new StockException("Product not found: " + productCode));
@@ -43,18 +69,18 @@ public class AddStockBatchUseCase {
         stockBatchRepository.save(stockBatch);
 
         // Update inventory
-        Inventory inventory = inventoryRepository.findByProductCode(productCode)
-                .orElseGet(() -> new Inventory(productCode));
+        Optional<Inventory> existing = inventoryRepository.findByProductCode(productCode);
+        Inventory inventory = existing.orElseGet(() -> new Inventory(productCode));
 
         inventory.addToStore(quantity);
 
-        if (inventoryRepository.findByProductCode(productCode).isPresent()) {
+        if (existing.isPresent()) {
             inventoryRepository.update(inventory);
         } else {
             inventoryRepository.save(inventory);
         }
 
-        inventorySubject.notifyInventoryChanged(inventory);
+        changedInventories.add(inventory);
 
         return stockBatch;
     }
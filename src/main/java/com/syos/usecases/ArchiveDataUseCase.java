@@ -0,0 +1,69 @@
+package com.syos.usecases;
+
+import com.syos.usecases.repositories.BillRepository;
+import com.syos.usecases.repositories.StockBatchRepository;
+
+import java.time.LocalDate;
+
+/**
+ * Use case for moving history out of the live data.
+ * Bills older than the horizon and stock batches with no quantity left are
+ * moved to the archive, so the finders, stock selection and reports that
+ * work on live data stop scanning them. Reports can still include the
+ * archive on request.
+ */
+public class ArchiveDataUseCase {
+    public static final int DEFAULT_HORIZON_DAYS = 365;
+
+    private final BillRepository billRepository;
+    private final StockBatchRepository stockBatchRepository;
+
+    public ArchiveDataUseCase(BillRepository billRepository, StockBatchRepository stockBatchRepository) {
+        this.billRepository = billRepository;
+        this.stockBatchRepository = stockBatchRepository;
+    }
+
+    /**
+     * Archives the bills dated before the horizon and every depleted batch.
+     *
+     * @param horizon First day whose bills stay live
+     */
+    public ArchiveResult execute(LocalDate horizon) throws ArchiveException {
+        if (horizon == null) {
+            throw new ArchiveException("Archive horizon cannot be null");
+        }
+        if (horizon.isAfter(LocalDate.now())) {
+            throw new ArchiveException("Archive horizon cannot be in the future");
+        }
+
+        int billsArchived = billRepository.archiveBefore(horizon);
+        int batchesArchived = stockBatchRepository.archiveDepleted();
+        return new ArchiveResult(billsArchived, batchesArchived);
+    }
+
+    public static class ArchiveResult {
+        private final int billsArchived;
+        private final int batchesArchived;
+
+        public ArchiveResult(int billsArchived, int batchesArchived) {
+            this.billsArchived = billsArchived;
+            this.batchesArchived = batchesArchived;
+        }
+
+        public int getBillsArchived() {
+            return billsArchived;
+        }
+
+        public int getBatchesArchived() {
+            return batchesArchived;
+        }
+    }
+
+    public static class ArchiveException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public ArchiveException(String message) {
+            super(message);
+        }
+    }
+}
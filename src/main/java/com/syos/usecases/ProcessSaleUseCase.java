@@ -9,17 +9,23 @@ import com.syos.usecases.repositories.BillRepository;
 import com.syos.usecases.repositories.InventoryRepository;
 import com.syos.usecases.repositories.ProductRepository;
 import com.syos.usecases.repositories.StockBatchRepository;
+import com.syos.usecases.strategies.BatchOrder;
 import com.syos.usecases.strategies.StockSelectionStrategy;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
 
 /**
  * Use case for processing sales transactions.
  * Follows Single Responsibility Principle - handles only sale processing.
  * Implements Command Pattern through execute method.
+ * The whole sale runs as one {@link UnitOfWork}; inventory observers are
+ * notified only after it has completed.
  */
 public class ProcessSaleUseCase {
     private final ProductRepository productRepository;
@@ -28,6 +34,7 @@ public class ProcessSaleUseCase {
     private final StockBatchRepository stockBatchRepository;
     private final StockSelectionStrategy stockSelectionStrategy;
     private final InventorySubject inventorySubject;
+    private final UnitOfWork unitOfWork;
 
     public ProcessSaleUseCase(ProductRepository productRepository,
             BillRepository billRepository,
@@ -35,12 +42,24 @@ public class ProcessSaleUseCase {
             StockBatchRepository stockBatchRepository,
             StockSelectionStrategy stockSelectionStrategy,
             InventorySubject inventorySubject) {
+        this(productRepository, billRepository, inventoryRepository, stockBatchRepository,
+                stockSelectionStrategy, inventorySubject, UnitOfWork.NONE);
+    }
+
+    public ProcessSaleUseCase(ProductRepository productRepository,
+            BillRepository billRepository,
+            InventoryRepository inventoryRepository,
+            StockBatchRepository stockBatchRepository,
+            StockSelectionStrategy stockSelectionStrategy,
+            InventorySubject inventorySubject,
+            UnitOfWork unitOfWork) {
         this.productRepository = productRepository;
         this.billRepository = billRepository;
         this.inventoryRepository = inventoryRepository;
         this.stockBatchRepository = stockBatchRepository;
         this.stockSelectionStrategy = stockSelectionStrategy;
         this.inventorySubject = inventorySubject;
+        this.unitOfWork = unitOfWork;
     }
 
     /**
@@ -53,28 +72,29 @@ public class ProcessSaleUseCase {
     public Bill execute(SaleRequest request) throws SaleException {
         validateRequest(request);
 
+        List<Inventory> changedInventories = new ArrayList<>();
+        Bill bill = unitOfWork.execute(() -> processSale(request, changedInventories));
+
+        for (Inventory inventory : changedInventories) {
+            inventorySubject.notifyInventoryChanged(inventory);
+        }
+        return bill;
+    }
+
+    private Bill processSale(SaleRequest request, List<Inventory> changedInventories) throws SaleException {
         // Build bill items
         List<Bill.BillItem> billItems = new ArrayList<>();
-        Map<String, Integer> itemQuantities = new HashMap<>();
+        Map<String, Product> products = new HashMap<>();
+        // Sorted by product code, so every sale locks the inventory rows it
+        // reads and decrements in the same order and two concurrent sales of
+        // the same products cannot deadlock
+        Map<String, Integer> itemQuantities = new TreeMap<>();
+        Map<String, Inventory> inventories = new TreeMap<>();
 
         for (SaleRequest.SaleItem saleItem : request.getItems()) {
             Product product = productRepository.findByCode(saleItem.getProductCode())
                     .orElseThrow(() -> new SaleException("Product not found: " + saleItem.getProductCode()));
 
-            // Check inventory availability
-            Inventory inventory = inventoryRepository.findByProductCode(product.getCode())
-                    .orElseThrow(() -> new SaleException("Inventory not found for product: " + product.getCode()));
-
-            int availableQuantity = request.getTransactionType() == Bill.TransactionType.COUNTER
-                    ? inventory.getShelfQuantity()
-                    : inventory.getOnlineQuantity();
-
-            if (availableQuantity < saleItem.getQuantity()) {
-                throw new SaleException("Insufficient stock for product: " + product.getName() +
-                        ". Available: " + availableQuantity +
-                        ", Requested: " + saleItem.getQuantity());
-            }
-
             // Create bill item
             Bill.BillItem billItem = new Bill.BillItem(
                     product.getCode(),
@@ -85,42 +105,112 @@ public class ProcessSaleUseCase {
                     product.getDiscountPercentage());
             billItems.add(billItem);
             itemQuantities.put(product.getCode(), saleItem.getQuantity());
+            products.put(product.getCode(), product);
         }
 
-        // Create bill
-        Bill bill = new Bill.Builder()
-                .serialNumber(billRepository.getNextSerialNumber())
-                .items(billItems)
-                .cashTendered(request.getCashTendered())
-                .transactionType(request.getTransactionType())
-                .customerId(request.getCustomerId())
-                .build();
+        for (Map.Entry<String, Integer> entry : itemQuantities.entrySet()) {
+            Product product = products.get(entry.getKey());
+
+            // Check inventory availability
+            Inventory inventory = inventoryRepository.findByProductCode(product.getCode())
+                    .orElseThrow(() -> new SaleException("Inventory not found for product: " + product.getCode()));
 
-        // Save bill
-        billRepository.save(bill);
+            int availableQuantity = request.getTransactionType() == Bill.TransactionType.COUNTER
+                    ? inventory.getShelfQuantity()
+                    : inventory.getOnlineQuantity();
 
-        // Update inventory
-        for (Map.Entry<String, Integer> entry : itemQuantities.entrySet()) {
-            String productCode = entry.getKey();
-            int quantity = entry.getValue();
+            if (availableQuantity < entry.getValue()) {
+                throw new SaleException("Insufficient stock for product: " + product.getName() +
+                        ". Available: " + availableQuantity +
+                        ", Requested: " + entry.getValue());
+            }
+            inventories.put(product.getCode(), inventory);
+        }
 
-            Inventory inventory = inventoryRepository.findByProductCode(productCode).get();
+        // Take the stock first: the conditional decrement fails instead of
+        // overselling when a concurrent sale got there in between
+        boolean counterSale = request.getTransactionType() == Bill.TransactionType.COUNTER;
+        Inventory.Location location = counterSale ? Inventory.Location.SHELF : Inventory.Location.ONLINE;
+        Map<String, Integer> decremented = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, Integer> entry : itemQuantities.entrySet()) {
+                String productCode = entry.getKey();
+                int quantity = entry.getValue();
+
+                if (!inventoryRepository.tryDecrement(productCode, location, quantity)) {
+                    throw new SaleException("Insufficient stock for product: " + productCode +
+                            ". It was sold out by another transaction.");
+                }
+                decremented.put(productCode, quantity);
+
+                Inventory inventory = inventories.get(productCode);
+                if (counterSale) {
+                    inventory.reduceFromShelf(quantity);
+                } else {
+                    inventory.reduceFromOnline(quantity);
+                }
+                changedInventories.add(inventory);
+            }
 
-            if (request.getTransactionType() == Bill.TransactionType.COUNTER) {
-                inventory.reduceFromShelf(quantity);
-                reduceStockBatches(productCode, quantity);
-            } else {
-                inventory.reduceFromOnline(quantity);
+            // Create and save bill; the repository assigns the serial number
+            Bill draft = new Bill.Builder()
+                    .items(billItems)
+                    .cashTendered(request.getCashTendered())
+                    .transactionType(request.getTransactionType())
+                    .customerId(request.getCustomerId())
+                    .build();
+            Bill bill = billRepository.create(draft);
+
+            if (counterSale) {
+                List<StockBatch> depletedBatches = new ArrayList<>();
+                for (Map.Entry<String, Integer> entry : itemQuantities.entrySet()) {
+                    reduceStockBatches(entry.getKey(), entry.getValue(), depletedBatches);
+                }
+                stockBatchRepository.updateAll(depletedBatches);
             }
 
-            inventoryRepository.update(inventory);
-            inventorySubject.notifyInventoryChanged(inventory);
+            return bill;
+        } catch (SaleException | RuntimeException e) {
+            restoreInventory(decremented, location, e);
+            throw e;
         }
+    }
 
-        return bill;
+    /**
+     * Puts back the stock taken by a sale that failed part way. Each
+     * decrement is stored on its own, so without a transaction to roll back
+     * (the JSON store, or {@link UnitOfWork#NONE}) the stock of the items
+     * before the failing one would otherwise be lost. Inside a transaction
+     * the increments are rolled back together with the decrements.
+     */
+    private void restoreInventory(Map<String, Integer> decremented, Inventory.Location location,
+            Exception failure) {
+        for (Map.Entry<String, Integer> entry : decremented.entrySet()) {
+            try {
+                inventoryRepository.increment(entry.getKey(), location, entry.getValue());
+            } catch (RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
     }
 
-    private void reduceStockBatches(String productCode, int quantityNeeded) throws SaleException {
+    /**
+     * Draws the quantity from the product's batches. When the strategy has an
+     * equivalent batch order the repository depletes the batches directly;
+     * otherwise every batch it reduced is added to depletedBatches, to be
+     * stored together.
+     */
+    private void reduceStockBatches(String productCode, int quantityNeeded, List<StockBatch> depletedBatches)
+            throws SaleException {
+        Optional<BatchOrder> batchOrder = stockSelectionStrategy.batchOrder();
+        if (batchOrder.isPresent()) {
+            // The repository selects and reduces the live batches itself
+            if (stockBatchRepository.depleteStock(productCode, quantityNeeded, batchOrder.get()).isEmpty()) {
+                throw new SaleException("No suitable stock batch available for product: " + productCode);
+            }
+            return;
+        }
+
         List<StockBatch> batches = stockBatchRepository.findByProductCode(productCode);
         int remainingQuantity = quantityNeeded;
 
@@ -133,7 +223,7 @@ public class ProcessSaleUseCase {
 
             int quantityToReduce = Math.min(remainingQuantity, selectedBatch.getQuantity());
             selectedBatch.reduceQuantity(quantityToReduce);
-            stockBatchRepository.update(selectedBatch);
+            depletedBatches.add(selectedBatch);
 
             remainingQuantity -= quantityToReduce;
         }
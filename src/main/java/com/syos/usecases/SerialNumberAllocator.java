@@ -0,0 +1,80 @@
+package com.syos.usecases;
+
+import com.syos.usecases.repositories.SequenceRepository;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Thread-safe allocator for bill serial numbers.
+ * Reserves a block of serials from a SequenceRepository and hands them out
+ * from an AtomicInteger, so allocating a serial costs neither a scan of the
+ * bills nor a round trip to the store. Every till (JVM) reserves its own
+ * blocks, so concurrent checkouts never receive the same serial. Unused
+ * serials of a block are skipped after a restart.
+ */
+public class SerialNumberAllocator {
+    public static final int DEFAULT_BLOCK_SIZE = 100;
+
+    private final SequenceRepository sequenceRepository;
+    private final String sequenceName;
+    private final int blockSize;
+    private final IntSupplier seed;
+    private volatile Block block = new Block(0, 0);
+    private boolean seeded;
+
+    /**
+     * @param sequenceRepository Store that persists reserved blocks
+     * @param sequenceName       Name of the sequence in the store
+     * @param blockSize          Number of serials reserved at a time
+     * @param seed               Lowest serial to start from, evaluated once when
+     *                           the first block is reserved
+     */
+    public SerialNumberAllocator(SequenceRepository sequenceRepository, String sequenceName,
+            int blockSize, IntSupplier seed) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.sequenceRepository = sequenceRepository;
+        this.sequenceName = sequenceName;
+        this.blockSize = blockSize;
+        this.seed = seed;
+    }
+
+    /**
+     * Allocates the next serial number.
+     */
+    public int next() {
+        while (true) {
+            Block current = block;
+            int value = current.next.getAndIncrement();
+            if (value < current.end) {
+                return value;
+            }
+            refill(current);
+        }
+    }
+
+    private synchronized void refill(Block exhausted) {
+        if (block != exhausted) {
+            return; // Another thread already reserved a new block
+        }
+        int minimumValue = 1;
+        if (!seeded) {
+            minimumValue = Math.max(1, seed.getAsInt());
+            seeded = true;
+        }
+        int start = sequenceRepository.reserveBlock(sequenceName, blockSize, minimumValue);
+        block = new Block(start, start + blockSize);
+    }
+
+    private static class Block {
+        final AtomicInteger next;
+        final int end;
+
+        Block(int start, int end) {
+            this.next = new AtomicInteger(start);
+            this.end = end;
+        }
+    }
+}
@@ -5,31 +5,51 @@ import com.syos.entities.StockBatch;
 import com.syos.usecases.observers.InventorySubject;
 import com.syos.usecases.repositories.InventoryRepository;
 import com.syos.usecases.repositories.StockBatchRepository;
+import com.syos.usecases.strategies.BatchOrder;
 import com.syos.usecases.strategies.StockSelectionStrategy;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Use case for managing stock transfers from store to shelf.
  * Implements the requirement: "Items are moved to the shelf from the store"
+ * The batch and inventory updates are stored as one {@link UnitOfWork}.
  */
 public class TransferStockUseCase {
     private final InventoryRepository inventoryRepository;
     private final StockBatchRepository stockBatchRepository;
     private final StockSelectionStrategy stockSelectionStrategy;
     private final InventorySubject inventorySubject;
+    private final UnitOfWork unitOfWork;
 
     public TransferStockUseCase(InventoryRepository inventoryRepository,
             StockBatchRepository stockBatchRepository,
             StockSelectionStrategy stockSelectionStrategy,
             InventorySubject inventorySubject) {
+        this(inventoryRepository, stockBatchRepository, stockSelectionStrategy, inventorySubject, UnitOfWork.NONE);
+    }
+
+    public TransferStockUseCase(InventoryRepository inventoryRepository,
+            StockBatchRepository stockBatchRepository,
+            StockSelectionStrategy stockSelectionStrategy,
+            InventorySubject inventorySubject,
+            UnitOfWork unitOfWork) {
         this.inventoryRepository = inventoryRepository;
         this.stockBatchRepository = stockBatchRepository;
         this.stockSelectionStrategy = stockSelectionStrategy;
         this.inventorySubject = inventorySubject;
+        this.unitOfWork = unitOfWork;
     }
 
     public void execute(String productCode, int quantity, TransferType transferType) throws TransferException {
+        Inventory inventory = unitOfWork.execute(() -> transfer(productCode, quantity, transferType));
+        inventorySubject.notifyInventoryChanged(inventory);
+    }
+
+    private Inventory transfer(String productCode, int quantity, TransferType transferType)
+            throws TransferException {
         Inventory inventory = inventoryRepository.findByProductCode(productCode)
                 .orElseThrow(() -> new TransferException("Inventory not found for product: " + productCode));
 
@@ -38,25 +58,7 @@ public class TransferStockUseCase {
                     inventory.getStoreQuantity() + ", Requested: " + quantity);
         }
 
-        // Get batches for this product and reduce from selected batches using expiry
-        // priority
-        List<StockBatch> batches = stockBatchRepository.findByProductCode(productCode);
-        int remainingQuantity = quantity;
-
-        while (remainingQuantity > 0) {
-            StockBatch selectedBatch = stockSelectionStrategy.selectBatch(batches);
-            if (selectedBatch == null) {
-                throw new TransferException("No available batches for product: " + productCode);
-            }
-
-            int reduceAmount = Math.min(remainingQuantity, selectedBatch.getQuantity());
-            selectedBatch.reduceQuantity(reduceAmount);
-            stockBatchRepository.update(selectedBatch);
-            remainingQuantity -= reduceAmount;
-
-            System.out.println("[BATCH] Reduced " + reduceAmount + " from batch: " + selectedBatch.getBatchId() +
-                    " (Expiry: " + selectedBatch.getExpiryDate() + ")");
-        }
+        reduceStockBatches(productCode, quantity);
 
         // Transfer based on type
         switch (transferType) {
@@ -71,7 +73,50 @@ public class TransferStockUseCase {
         }
 
         inventoryRepository.update(inventory);
-        inventorySubject.notifyInventoryChanged(inventory);
+        return inventory;
+    }
+
+    /**
+     * Reduces the product's batches using expiry priority. When the strategy
+     * has an equivalent batch order the repository depletes the batches
+     * directly; otherwise the reduced batches are stored together.
+     */
+    private void reduceStockBatches(String productCode, int quantity) throws TransferException {
+        Optional<BatchOrder> batchOrder = stockSelectionStrategy.batchOrder();
+        List<StockBatch> depletedBatches;
+        if (batchOrder.isPresent()) {
+            depletedBatches = stockBatchRepository.depleteStock(productCode, quantity, batchOrder.get());
+            if (depletedBatches.isEmpty()) {
+                throw new TransferException("No available batches for product: " + productCode);
+            }
+        } else {
+            depletedBatches = selectBatches(productCode, quantity);
+            stockBatchRepository.updateAll(depletedBatches);
+        }
+
+        for (StockBatch batch : depletedBatches) {
+            System.out.println("[BATCH] Reduced batch: " + batch.getBatchId() + " to " + batch.getQuantity() +
+                    " (Expiry: " + batch.getExpiryDate() + ")");
+        }
+    }
+
+    private List<StockBatch> selectBatches(String productCode, int quantity) throws TransferException {
+        List<StockBatch> batches = stockBatchRepository.findByProductCode(productCode);
+        List<StockBatch> depletedBatches = new ArrayList<>();
+        int remainingQuantity = quantity;
+
+        while (remainingQuantity > 0) {
+            StockBatch selectedBatch = stockSelectionStrategy.selectBatch(batches);
+            if (selectedBatch == null) {
+                throw new TransferException("No available batches for product: " + productCode);
+            }
+
+            int reduceAmount = Math.min(remainingQuantity, selectedBatch.getQuantity());
+            selectedBatch.reduceQuantity(reduceAmount);
+            depletedBatches.add(selectedBatch);
+            remainingQuantity -= reduceAmount;
+        }
+        return depletedBatches;
     }
 
     public enum TransferType {
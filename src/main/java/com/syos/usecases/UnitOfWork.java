@@ -0,0 +1,29 @@
+package com.syos.usecases;
+
+/**
+ * Runs the repository calls of one use case as a single atomic unit.
+ * Implementations for transactional stores run the work in one transaction
+ * that commits when it returns and rolls back when it throws; nested units
+ * join the outer one.
+ */
+public interface UnitOfWork {
+    /**
+     * Runs work directly against the repositories, without a transaction.
+     */
+    UnitOfWork NONE = new UnitOfWork() {
+        @Override
+        public <T, E extends Exception> T execute(Work<T, E> work) throws E {
+            return work.run();
+        }
+    };
+
+    <T, E extends Exception> T execute(Work<T, E> work) throws E;
+
+    /**
+     * The repository calls to run as one unit.
+     */
+    @FunctionalInterface
+    interface Work<T, E extends Exception> {
+        T run() throws E;
+    }
+}
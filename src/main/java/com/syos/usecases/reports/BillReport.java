@@ -4,7 +4,8 @@ import com.syos.entities.Bill;
 import com.syos.usecases.repositories.BillRepository;
 
 import java.time.format.DateTimeFormatter;
-import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Bill report showing all customer transactions.
@@ -15,38 +16,41 @@ import java.util.List;
 public class BillReport extends ReportTemplate {
     private final BillRepository billRepository;
     private final Bill.TransactionType transactionType;
+    private final boolean includeArchive;
 
     public BillReport(BillRepository billRepository, Bill.TransactionType transactionType) {
+        this(billRepository, transactionType, false);
+    }
+
+    /**
+     * @param includeArchive Whether archived bills are listed after the live ones
+     */
+    public BillReport(BillRepository billRepository, Bill.TransactionType transactionType, boolean includeArchive) {
         this.billRepository = billRepository;
         this.transactionType = transactionType;
+        this.includeArchive = includeArchive;
     }
 
     @Override
     protected String getReportHeader() {
-        return String.format("=== BILL REPORT ===\nTransaction Type: %s\n",
-                transactionType == null ? "ALL" : transactionType);
+        return String.format("=== BILL REPORT ===\nTransaction Type: %s\n%s",
+                transactionType == null ? "ALL" : transactionType,
+                includeArchive ? "Including archived bills\n" : "");
     }
 
+    /**
+     * Formats the bills while they are streamed from the repository, so only
+     * the report text is held in memory rather than every bill.
+     */
     @Override
     protected String getReportBody() {
-        List<Bill> bills = transactionType == null
-                ? billRepository.findAll()
-                : billRepository.findByTransactionType(transactionType);
-
-        if (bills.isEmpty()) {
-            return "No bills found.";
-        }
-
-        StringBuilder body = new StringBuilder();
-        body.append(String.format("%-10s %-20s %-15s %-12s %-12s %-12s %-15s\n",
-                "Bill No.", "Date & Time", "Type", "Subtotal", "Discount", "Total", "Customer ID"));
-        body.append("-".repeat(110)).append("\n");
-
+        StringBuilder rows = new StringBuilder();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm");
-        double totalSales = 0.0;
+        int[] billCount = new int[1];
+        double[] totalSales = new double[1];
 
-        for (Bill bill : bills) {
-            body.append(String.format("%-10d %-20s %-15s %-12.2f %-12.2f %-12.2f %-15s\n",
+        Consumer<Bill> appendRow = bill -> {
+            rows.append(String.format("%-10d %-20s %-15s %-12.2f %-12.2f %-12.2f %-15s\n",
                     bill.getSerialNumber(),
                     bill.getBillDate().format(formatter),
                     bill.getTransactionType(),
@@ -54,13 +58,34 @@ public class BillReport extends ReportTemplate {
                     bill.getDiscount(),
                     bill.getTotal(),
                     bill.getCustomerId() != null ? bill.getCustomerId() : "N/A"));
+            billCount[0]++;
+            totalSales[0] += bill.getTotal();
+        };
 
-            totalSales += bill.getTotal();
+        try (Stream<Bill> bills = transactionType == null
+                ? billRepository.streamAll()
+                : billRepository.streamByTransactionType(transactionType)) {
+            bills.forEach(appendRow);
+        }
+        if (includeArchive) {
+            try (Stream<Bill> archived = billRepository.streamArchived()) {
+                archived.filter(bill -> transactionType == null || bill.getTransactionType() == transactionType)
+                        .forEach(appendRow);
+            }
+        }
+
+        if (billCount[0] == 0) {
+            return "No bills found.";
         }
 
+        StringBuilder body = new StringBuilder();
+        body.append(String.format("%-10s %-20s %-15s %-12s %-12s %-12s %-15s\n",
+                "Bill No.", "Date & Time", "Type", "Subtotal", "Discount", "Total", "Customer ID"));
+        body.append("-".repeat(110)).append("\n");
+        body.append(rows);
         body.append("-".repeat(110)).append("\n");
-        body.append(String.format("Total Bills: %d\n", bills.size()));
-        body.append(String.format("Total Sales: Rs. %.2f\n", totalSales));
+        body.append(String.format("Total Bills: %d\n", billCount[0]));
+        body.append(String.format("Total Sales: Rs. %.2f\n", totalSales[0]));
 
         return body.toString();
     }
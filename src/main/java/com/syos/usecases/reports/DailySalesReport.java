@@ -5,6 +5,7 @@ import com.syos.usecases.repositories.BillRepository;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,25 +21,41 @@ public class DailySalesReport extends ReportTemplate {
     private final BillRepository billRepository;
     private final LocalDate date;
     private final Bill.TransactionType transactionType;
+    private final boolean includeArchive;
 
     public DailySalesReport(BillRepository billRepository, LocalDate date, Bill.TransactionType transactionType) {
+        this(billRepository, date, transactionType, false);
+    }
+
+    /**
+     * @param includeArchive Whether archived bills of the day are counted too
+     */
+    public DailySalesReport(BillRepository billRepository, LocalDate date, Bill.TransactionType transactionType,
+            boolean includeArchive) {
         this.billRepository = billRepository;
         this.date = date;
         this.transactionType = transactionType;
+        this.includeArchive = includeArchive;
     }
 
     @Override
     protected String getReportHeader() {
-        return String.format("=== DAILY SALES REPORT ===\nDate: %s\nTransaction Type: %s\n",
+        return String.format("=== DAILY SALES REPORT ===\nDate: %s\nTransaction Type: %s\n%s",
                 date.format(DateTimeFormatter.ISO_LOCAL_DATE),
-                transactionType == null ? "ALL" : transactionType);
+                transactionType == null ? "ALL" : transactionType,
+                includeArchive ? "Including archived bills\n" : "");
     }
 
     @Override
     protected String getReportBody() {
-        List<Bill> bills = transactionType == null
+        List<Bill> bills = new ArrayList<>(transactionType == null
                 ? billRepository.findByDate(date)
-                : billRepository.findByDateAndType(date, transactionType);
+                : billRepository.findByDateAndType(date, transactionType));
+        if (includeArchive) {
+            billRepository.findArchivedByDate(date).stream()
+                    .filter(bill -> transactionType == null || bill.getTransactionType() == transactionType)
+                    .forEach(bills::add);
+        }
 
         if (bills.isEmpty()) {
             return "No sales recorded for this date.";
@@ -5,8 +5,11 @@ import com.syos.entities.StockBatch;
 import com.syos.usecases.repositories.ProductRepository;
 import com.syos.usecases.repositories.StockBatchRepository;
 
+import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Stock report showing batch-wise details.
@@ -18,10 +21,21 @@ import java.util.List;
 public class StockReport extends ReportTemplate {
     private final StockBatchRepository stockBatchRepository;
     private final ProductRepository productRepository;
+    private final boolean includeArchive;
 
     public StockReport(StockBatchRepository stockBatchRepository, ProductRepository productRepository) {
+        this(stockBatchRepository, productRepository, false);
+    }
+
+    /**
+     * @param includeArchive Whether archived (depleted) batches are listed
+     *                       after the live ones
+     */
+    public StockReport(StockBatchRepository stockBatchRepository, ProductRepository productRepository,
+            boolean includeArchive) {
         this.stockBatchRepository = stockBatchRepository;
         this.productRepository = productRepository;
+        this.includeArchive = includeArchive;
     }
 
     @Override
@@ -31,37 +45,63 @@ public class StockReport extends ReportTemplate {
 
     @Override
     protected String getReportBody() {
-        List<StockBatch> batches = stockBatchRepository.findAll();
-
-        if (batches.isEmpty()) {
-            return "No stock batches available.";
-        }
-
-        StringBuilder body = new StringBuilder();
-        body.append(String.format("%-12s %-25s %-15s %-10s %-15s %-10s\n",
-                "Code", "Product Name", "Purchase Date", "Quantity", "Expiry Date", "Status"));
-        body.append("-".repeat(100)).append("\n");
-
+        StringBuilder rows = new StringBuilder();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+        Map<String, String> productNames = new HashMap<>();
+        int today = (int) LocalDate.now().toEpochDay();
+        int[] batchCount = new int[1];
 
-        for (StockBatch batch : batches) {
-            String productName = productRepository.findByCode(batch.getProductCode())
-                    .map(Product::getName)
-                    .orElse("Unknown");
+        // Scan only the needed columns instead of loading every StockBatch
+        stockBatchRepository.forEachBatch((productCode, purchaseEpochDay, quantity, expiryEpochDay) -> {
+            String productName = productNames.computeIfAbsent(productCode,
+                    code -> productRepository.findByCode(code)
+                            .map(Product::getName)
+                            .orElse("Unknown"));
 
-            String status = batch.isExpired() ? "EXPIRED" : (batch.getDaysUntilExpiry() < 30 ? "EXPIRING SOON" : "OK");
+            int daysUntilExpiry = expiryEpochDay - today;
+            String status = daysUntilExpiry < 0 ? "EXPIRED" : (daysUntilExpiry < 30 ? "EXPIRING SOON" : "OK");
 
-            body.append(String.format("%-12s %-25s %-15s %-10d %-15s %-10s\n",
-                    batch.getProductCode(),
+            rows.append(String.format("%-12s %-25s %-15s %-10d %-15s %-10s\n",
+                    productCode,
                     productName,
-                    batch.getPurchaseDate().format(formatter),
-                    batch.getQuantity(),
-                    batch.getExpiryDate().format(formatter),
+                    LocalDate.ofEpochDay(purchaseEpochDay).format(formatter),
+                    quantity,
+                    LocalDate.ofEpochDay(expiryEpochDay).format(formatter),
                     status));
+            batchCount[0]++;
+        });
+
+        if (includeArchive) {
+            try (Stream<StockBatch> archived = stockBatchRepository.streamArchived()) {
+                archived.forEach(batch -> {
+                    String productName = productNames.computeIfAbsent(batch.getProductCode(),
+                            code -> productRepository.findByCode(code)
+                                    .map(Product::getName)
+                                    .orElse("Unknown"));
+
+                    rows.append(String.format("%-12s %-25s %-15s %-10d %-15s %-10s\n",
+                            batch.getProductCode(),
+                            productName,
+                            batch.getPurchaseDate().format(formatter),
+                            batch.getQuantity(),
+                            batch.getExpiryDate().format(formatter),
+                            "ARCHIVED"));
+                    batchCount[0]++;
+                });
+            }
+        }
+
+        if (batchCount[0] == 0) {
+            return "No stock batches available.";
         }
 
+        StringBuilder body = new StringBuilder();
+        body.append(String.format("%-12s %-25s %-15s %-10s %-15s %-10s\n",
+                "Code", "Product Name", "Purchase Date", "Quantity", "Expiry Date", "Status"));
+        body.append("-".repeat(100)).append("\n");
+        body.append(rows);
         body.append("-".repeat(100)).append("\n");
-        body.append(String.format("Total batches: %d\n", batches.size()));
+        body.append(String.format("Total batches: %d\n", batchCount[0]));
 
         return body.toString();
     }
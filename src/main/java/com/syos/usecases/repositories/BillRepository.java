@@ -4,6 +4,7 @@ import com.syos.entities.Bill;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Repository interface for Bill data access.
@@ -12,6 +13,18 @@ import java.util.Optional;
 public interface BillRepository {
     void save(Bill bill);
 
+    /**
+     * Stores a new bill under the next serial number. The draft's own serial
+     * number is ignored.
+     *
+     * @return The stored bill, carrying the serial number it was saved under
+     */
+    default Bill create(Bill draft) {
+        Bill bill = draft.withSerialNumber(getNextSerialNumber());
+        save(bill);
+        return bill;
+    }
+
     Optional<Bill> findBySerialNumber(int serialNumber);
 
     List<Bill> findAll();
@@ -20,7 +33,50 @@ public interface BillRepository {
 
     List<Bill> findByTransactionType(Bill.TransactionType type);
 
+    /**
+     * Same bills as {@link #findAll()}, read as the caller consumes them
+     * instead of loaded all at once where the store allows. The stream may
+     * hold a database connection, so callers close it, typically with
+     * try-with-resources.
+     */
+    default Stream<Bill> streamAll() {
+        return findAll().stream();
+    }
+
+    /**
+     * Streaming counterpart of {@link #findByTransactionType}; see
+     * {@link #streamAll()}.
+     */
+    default Stream<Bill> streamByTransactionType(Bill.TransactionType type) {
+        return findByTransactionType(type).stream();
+    }
+
     List<Bill> findByDateAndType(LocalDate date, Bill.TransactionType type);
 
     int getNextSerialNumber();
+
+    /**
+     * Moves the bills dated before the horizon, with their items, out of the
+     * live store into the archive. The finders above no longer return them.
+     *
+     * @return the number of bills archived
+     */
+    int archiveBefore(LocalDate horizon);
+
+    /**
+     * Bills in the archive, newest first.
+     */
+    List<Bill> findArchived();
+
+    /**
+     * Streaming counterpart of {@link #findArchived()}; see {@link #streamAll()}.
+     */
+    default Stream<Bill> streamArchived() {
+        return findArchived().stream();
+    }
+
+    /**
+     * Bills in the archive dated on the given day.
+     */
+    List<Bill> findArchivedByDate(LocalDate date);
 }
@@ -16,5 +16,22 @@ public interface InventoryRepository {
 
     void update(Inventory inventory);
 
+    /**
+     * Atomically reduces the quantity held at one location, but only if at
+     * least that much is available there. Concurrent callers can never drive
+     * a quantity below zero.
+     *
+     * @return false if the product has no inventory or too little at the location
+     */
+    boolean tryDecrement(String productCode, Inventory.Location location, int quantity);
+
+    /**
+     * Atomically adds to the quantity held at one location, e.g. to give back
+     * stock taken by {@link #tryDecrement} for a sale that then failed.
+     *
+     * @throws IllegalArgumentException if the product has no inventory
+     */
+    void increment(String productCode, Inventory.Location location, int quantity);
+
     List<Inventory> findBelowReorderLevel();
 }
@@ -0,0 +1,19 @@
+package com.syos.usecases.repositories;
+
+/**
+ * Repository interface for named number sequences.
+ * Values are handed out in blocks so that callers can allocate from memory
+ * and only return to the store when a block is used up.
+ */
+public interface SequenceRepository {
+    /**
+     * Atomically reserves the next block of values of a sequence. The sequence
+     * is created on first use, and never starts below minimumValue.
+     *
+     * @param sequenceName Name of the sequence
+     * @param blockSize    Number of values to reserve
+     * @param minimumValue Lowest value the block may start at
+     * @return First value of the reserved block
+     */
+    int reserveBlock(String sequenceName, int blockSize, int minimumValue);
+}
@@ -1,8 +1,12 @@
 package com.syos.usecases.repositories;
 
 import com.syos.entities.StockBatch;
+import com.syos.usecases.strategies.BatchOrder;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Repository interface for StockBatch data access.
@@ -16,7 +20,120 @@ public interface StockBatchRepository {
 
     List<StockBatch> findAll();
 
+    /**
+     * Same batches as {@link #findAll()}, read as the caller consumes them
+     * instead of loaded all at once where the store allows. The stream may
+     * hold a database connection, so callers close it, typically with
+     * try-with-resources.
+     */
+    default Stream<StockBatch> streamAll() {
+        return findAll().stream();
+    }
+
     void update(StockBatch stockBatch);
 
+    /**
+     * Stores the quantities of several batches at once, so that a sale or
+     * transfer drawing on many batches costs one write instead of one per
+     * batch. Fails with IllegalArgumentException if any batch does not exist.
+     */
+    default void updateAll(Collection<StockBatch> stockBatches) {
+        for (StockBatch stockBatch : stockBatches) {
+            update(stockBatch);
+        }
+    }
+
     void delete(String batchId);
+
+    /**
+     * Moves the batches with no quantity left out of the live store into the
+     * archive, so finders and scans stop reading them.
+     *
+     * @return the number of batches archived
+     */
+    int archiveDepleted();
+
+    /**
+     * Batches in the archive, ordered by product code and purchase date.
+     */
+    List<StockBatch> findArchived();
+
+    /**
+     * Streaming counterpart of {@link #findArchived()}; see {@link #streamAll()}.
+     */
+    default Stream<StockBatch> streamArchived() {
+        return findArchived().stream();
+    }
+
+    /**
+     * Draws a quantity from the product's live batches, those with stock left
+     * that have not expired, taking them in the given order. Either the whole
+     * quantity is taken or nothing changes.
+     *
+     * This default reads the batches, reduces them and writes them back as
+     * separate calls, so two concurrent calls can draw on the same stock and
+     * one decrement is lost. Stores that serve concurrent sales override it
+     * to select and write the batches atomically.
+     *
+     * @return the reduced batches with their new quantities, or an empty list
+     *         if the live batches hold less than the quantity
+     */
+    default List<StockBatch> depleteStock(String productCode, int quantity, BatchOrder order) {
+        List<StockBatch> depleted = drawFrom(findByProductCode(productCode), quantity, order);
+        updateAll(depleted);
+        return depleted;
+    }
+
+    /**
+     * Reduces the live batches among the given ones, in the given order, until
+     * they cover the quantity; see {@link #depleteStock}.
+     *
+     * @return the reduced batches, or an empty list, reducing none, if the
+     *         live batches hold less than the quantity
+     */
+    static List<StockBatch> drawFrom(Collection<StockBatch> batches, int quantity, BatchOrder order) {
+        List<StockBatch> liveBatches = batches.stream()
+                .filter(batch -> batch.getQuantity() > 0)
+                .filter(batch -> !batch.isExpired())
+                .sorted(order.comparator())
+                .toList();
+        if (liveBatches.stream().mapToInt(StockBatch::getQuantity).sum() < quantity) {
+            return List.of();
+        }
+
+        List<StockBatch> depleted = new ArrayList<>();
+        int remaining = quantity;
+        for (StockBatch batch : liveBatches) {
+            if (remaining == 0) {
+                break;
+            }
+            int taken = Math.min(remaining, batch.getQuantity());
+            batch.reduceQuantity(taken);
+            depleted.add(batch);
+            remaining -= taken;
+        }
+        return depleted;
+    }
+
+    /**
+     * Visits the columns that reports and stock selection need for every
+     * batch, without materializing StockBatch objects where the store allows.
+     * Dates are passed as epoch days.
+     */
+    default void forEachBatch(BatchVisitor visitor) {
+        try (Stream<StockBatch> batches = streamAll()) {
+            batches.forEach(batch -> visitor.visit(batch.getProductCode(),
+                    (int) batch.getPurchaseDate().toEpochDay(),
+                    batch.getQuantity(),
+                    (int) batch.getExpiryDate().toEpochDay()));
+        }
+    }
+
+    /**
+     * Receives one batch at a time from {@link #forEachBatch(BatchVisitor)}.
+     */
+    @FunctionalInterface
+    interface BatchVisitor {
+        void visit(String productCode, int purchaseEpochDay, int quantity, int expiryEpochDay);
+    }
 }
@@ -0,0 +1,34 @@
+package com.syos.usecases.strategies;
+
+import com.syos.entities.StockBatch;
+import java.util.Comparator;
+
+/**
+ * Order in which live stock batches are drawn down.
+ * A strategy that always picks the first live batch in one of these orders
+ * reports it through {@link StockSelectionStrategy#batchOrder()}, so a
+ * repository can select and deplete the batches itself.
+ */
+public enum BatchOrder {
+    /**
+     * Oldest purchase first.
+     */
+    OLDEST_FIRST(Comparator.comparing(StockBatch::getPurchaseDate)),
+
+    /**
+     * Closest expiry first, the oldest purchase among batches expiring on
+     * the same day.
+     */
+    EXPIRY_FIRST(Comparator.comparing(StockBatch::getExpiryDate)
+            .thenComparing(StockBatch::getPurchaseDate));
+
+    private final Comparator<StockBatch> comparator;
+
+    BatchOrder(Comparator<StockBatch> comparator) {
+        this.comparator = comparator;
+    }
+
+    public Comparator<StockBatch> comparator() {
+        return comparator;
+    }
+}
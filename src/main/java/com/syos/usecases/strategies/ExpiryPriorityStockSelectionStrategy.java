@@ -3,6 +3,7 @@ package com.syos.usecases.strategies;
 import com.syos.entities.StockBatch;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Expiry-priority stock selection strategy.
@@ -62,4 +63,13 @@ public class ExpiryPriorityStockSelectionStrategy implements StockSelectionStrat
         // Otherwise, use FIFO
         return oldestBatch;
     }
+
+    /**
+     * The closest expiry wins unless the oldest batch expires just as soon,
+     * which amounts to ordering by expiry date and then purchase date.
+     */
+    @Override
+    public Optional<BatchOrder> batchOrder() {
+        return Optional.of(BatchOrder.EXPIRY_FIRST);
+    }
 }
@@ -3,6 +3,7 @@ package com.syos.usecases.strategies;
 import com.syos.entities.StockBatch;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * FIFO (First In, First Out) stock selection strategy.
@@ -22,4 +23,9 @@ public class FIFOStockSelectionStrategy implements StockSelectionStrategy {
                 .min(Comparator.comparing(StockBatch::getPurchaseDate))
                 .orElse(null);
     }
+
+    @Override
+    public Optional<BatchOrder> batchOrder() {
+        return Optional.of(BatchOrder.OLDEST_FIRST);
+    }
 }
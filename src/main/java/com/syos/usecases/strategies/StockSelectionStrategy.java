@@ -2,6 +2,7 @@ package com.syos.usecases.strategies;
 
 import com.syos.entities.StockBatch;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Strategy interface for selecting stock batches.
@@ -17,4 +18,15 @@ public interface StockSelectionStrategy {
      * @return Selected stock batch, or null if none suitable
      */
     StockBatch selectBatch(List<StockBatch> batches);
+
+    /**
+     * The order this strategy draws batches in, if repeatedly selecting a
+     * batch always yields the first live batch in that order. Callers can
+     * then let the repository deplete the batches instead of loading them.
+     *
+     * @return the equivalent batch order, or empty if there is none
+     */
+    default Optional<BatchOrder> batchOrder() {
+        return Optional.empty();
+    }
 }
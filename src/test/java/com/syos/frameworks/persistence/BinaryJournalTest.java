@@ -0,0 +1,268 @@
+package com.syos.frameworks.persistence;
+
+import com.google.gson.Gson;
+import com.syos.frameworks.persistence.JsonBillRepository.BillData;
+import com.syos.frameworks.persistence.JsonBillRepository.BillDataCodec;
+import com.syos.frameworks.persistence.JsonBillRepository.BillItemData;
+import com.syos.frameworks.persistence.JsonBillRepository.BillKey;
+import com.syos.frameworks.persistence.JsonBillRepository.BillKeyDecoder;
+import com.syos.frameworks.persistence.JsonStockBatchRepository.StockBatchCodec;
+import com.syos.frameworks.persistence.JsonStockBatchRepository.StockBatchData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+@DisplayName("Binary Journal Tests")
+class BinaryJournalTest {
+    private static final Map<Class<?>, RecordDecoder<?>> BILL_CODECS = Map.of(
+            BillData.class, new BillDataCodec(), BillKey.class, new BillKeyDecoder());
+
+    @TempDir
+    Path directory;
+
+    private final Gson gson = new Gson();
+    private JsonDataStore dataStore;
+
+    @BeforeEach
+    void setUp() {
+        dataStore = new JsonDataStore(directory.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataStore.shutdown();
+    }
+
+    // ==================== HELPER METHODS ====================
+
+    private static BillData bill(int serialNumber, LocalDateTime date, String customerId, int itemCount) {
+        BillData data = new BillData();
+        data.serialNumber = serialNumber;
+        data.billDate = date.toString();
+        data.transactionType = customerId != null ? "ONLINE" : "COUNTER";
+        data.customerId = customerId;
+        data.items = new ArrayList<>();
+        for (int i = 0; i < itemCount; i++) {
+            BillItemData item = new BillItemData();
+            item.productCode = "P" + i;
+            item.productName = "Product é " + i;
+            item.unit = i % 2 == 0 ? "pcs" : null;
+            item.quantity = i + 1;
+            item.price = 12.5 * (i + 1);
+            item.discountPercentage = i * 2.5;
+            data.items.add(item);
+        }
+        data.subtotal = 100.25;
+        data.discount = 0.1;
+        data.total = 100.15;
+        data.cashTendered = 200;
+        data.change = 99.85;
+        return data;
+    }
+
+    private static List<BillData> bills() {
+        return List.of(
+                bill(1, LocalDateTime.of(2026, 3, 1, 10, 15), null, 0),
+                bill(2, LocalDateTime.of(2026, 3, 1, 10, 15, 30, 123_000_000), "U1", 3),
+                bill(300, LocalDateTime.of(1999, 12, 31, 23, 59, 59, 999_999_999), null, 1));
+    }
+
+    private static <T> byte[] encode(RecordCodec<T> codec, T record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.write(record, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static <T> T decode(RecordDecoder<T> decoder, byte[] bytes) throws IOException {
+        return decoder.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private static List<BillData> scanAll(JsonJournal journal) {
+        List<BillData> records = new ArrayList<>();
+        journal.scanFrom(0, BillData.class, (offset, record) -> records.add(record));
+        return records;
+    }
+
+    private List<String> asJson(List<?> records) {
+        return records.stream().map(gson::toJson).toList();
+    }
+
+    // ==================== ENCODING TESTS ====================
+
+    @Test
+    @DisplayName("Should round-trip varints, using one byte for small values")
+    void shouldRoundTripVarints() throws IOException {
+        long[] values = {0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BinaryEncoding.writeVarLong(new DataOutputStream(bytes), value);
+            if (value >= -64 && value <= 63) {
+                assertEquals(1, bytes.size(), "Encoded size of " + value);
+            }
+            assertEquals(value, BinaryEncoding.readVarLong(
+                    new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+        }
+    }
+
+    @Test
+    @DisplayName("Should round-trip null, empty and non-ASCII strings")
+    void shouldRoundTripStrings() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        BinaryEncoding.writeString(out, null);
+        BinaryEncoding.writeString(out, "");
+        BinaryEncoding.writeString(out, "Café ☕");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertNull(BinaryEncoding.readString(in));
+        assertEquals("", BinaryEncoding.readString(in));
+        assertEquals("Café ☕", BinaryEncoding.readString(in));
+    }
+
+    // ==================== CODEC TESTS ====================
+
+    @Test
+    @DisplayName("Should decode every bill field the codec encoded")
+    void shouldRoundTripBills() throws IOException {
+        BillDataCodec codec = new BillDataCodec();
+        for (BillData bill : bills()) {
+            assertEquals(gson.toJson(bill), gson.toJson(decode(codec, encode(codec, bill))));
+        }
+    }
+
+    @Test
+    @DisplayName("Should re-encode a bill to the same bytes after a trip through JSON")
+    void shouldReEncodeBillsAfterJsonTrip() throws IOException {
+        BillDataCodec codec = new BillDataCodec();
+        for (BillData bill : bills()) {
+            byte[] binary = encode(codec, bill);
+            String json = gson.toJson(decode(codec, binary));
+            assertArrayEquals(binary, encode(codec, gson.fromJson(json, BillData.class)));
+        }
+    }
+
+    @Test
+    @DisplayName("Should read the key fields from the start of a full bill frame")
+    void shouldDecodeBillKeys() throws IOException {
+        BillData bill = bills().get(1);
+
+        BillKey key = decode(new BillKeyDecoder(), encode(new BillDataCodec(), bill));
+
+        assertEquals(bill.serialNumber, key.serialNumber);
+        assertEquals(bill.billDate, key.billDate);
+        assertEquals(bill.transactionType, key.transactionType);
+    }
+
+    @Test
+    @DisplayName("Should round-trip stock batches and tombstones")
+    void shouldRoundTripStockBatches() throws IOException {
+        StockBatchCodec codec = new StockBatchCodec();
+        StockBatchData batch = new StockBatchData();
+        batch.batchId = "B1";
+        batch.productCode = "P1";
+        batch.purchaseDate = "2026-01-31";
+        batch.quantity = 40;
+        batch.expiryDate = "2027-02-28";
+        StockBatchData tombstone = new StockBatchData();
+        tombstone.batchId = "B1";
+        tombstone.deleted = Boolean.TRUE;
+
+        assertEquals(gson.toJson(batch), gson.toJson(decode(codec, encode(codec, batch))));
+        assertEquals(gson.toJson(tombstone), gson.toJson(decode(codec, encode(codec, tombstone))));
+    }
+
+    // ==================== FRAME TESTS ====================
+
+    @Test
+    @DisplayName("Should scan binary frames and read them back by offset")
+    void shouldReadBinaryFrames() {
+        // ARRANGE
+        JsonJournal journal = dataStore.binaryJournal("bills.bin", BILL_CODECS);
+        List<BillData> bills = bills();
+        bills.forEach(journal::append);
+
+        // ACT
+        List<Long> offsets = new ArrayList<>();
+        List<Integer> serials = new ArrayList<>();
+        journal.scanFrom(0, BillKey.class, (offset, key) -> {
+            offsets.add(offset);
+            serials.add(key.serialNumber);
+        });
+
+        // ASSERT
+        assertEquals(List.of(1, 2, 300), serials);
+        assertEquals(asJson(bills), asJson(scanAll(journal)));
+        assertEquals(gson.toJson(bills.get(1)),
+                gson.toJson(journal.readAt(List.of(offsets.get(1)), BillData.class).get(0)));
+    }
+
+    @Test
+    @DisplayName("Should ignore a truncated trailing frame")
+    void shouldIgnoreTruncatedTrailingFrame() throws IOException {
+        // ARRANGE
+        JsonJournal journal = dataStore.binaryJournal("bills.bin", BILL_CODECS);
+        List<BillData> bills = bills();
+        journal.appendAll(bills);
+        journal.close();
+        long complete = Files.size(journal.getPath());
+        byte[] written = Files.readAllBytes(journal.getPath());
+        // The start of a copy of the first frame, as a crash mid-append leaves it
+        Files.write(journal.getPath(), Arrays.copyOf(written, 10), StandardOpenOption.APPEND);
+
+        // ACT
+        List<BillData> read = new ArrayList<>();
+        long end = journal.scanFrom(0, BillData.class, (offset, record) -> read.add(record));
+
+        // ASSERT
+        assertEquals(complete, end);
+        assertEquals(asJson(bills), asJson(read));
+    }
+
+    @Test
+    @DisplayName("Should refuse to append a type the journal can only decode")
+    void shouldRefuseToAppendDecodeOnlyType() {
+        JsonJournal journal = dataStore.binaryJournal("bills.bin", BILL_CODECS);
+
+        assertThrows(IllegalArgumentException.class, () -> journal.append(new BillKey()));
+    }
+
+    // ==================== CONVERSION TESTS ====================
+
+    @Test
+    @DisplayName("Should convert a JSON journal to binary frames holding the same records")
+    void shouldConvertJsonJournalToBinary() {
+        // ARRANGE
+        JsonJournal json = dataStore.journal("bills.jsonl");
+        List<BillData> bills = bills();
+        json.appendAll(bills);
+        json.close();
+        JsonJournal binary = dataStore.binaryJournal("bills.bin", BILL_CODECS);
+
+        // ACT
+        boolean converted = dataStore.convertToBinary("bills.jsonl", binary, BillData.class);
+
+        // ASSERT
+        assertTrue(converted);
+        assertEquals(asJson(bills), asJson(scanAll(binary)));
+        assertFalse(Files.exists(directory.resolve("bills.jsonl")));
+        assertTrue(Files.exists(directory.resolve("bills.jsonl.migrated")));
+        assertFalse(dataStore.convertToBinary("bills.jsonl", binary, BillData.class));
+    }
+}
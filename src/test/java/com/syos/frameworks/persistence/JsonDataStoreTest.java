@@ -0,0 +1,155 @@
+package com.syos.frameworks.persistence;
+
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+@DisplayName("JSON Data Store Tests")
+class JsonDataStoreTest {
+    private static final String FILENAME = "items.json";
+    private static final Type LIST_TYPE = new TypeToken<ArrayList<Item>>() {
+    }.getType();
+
+    @TempDir
+    Path directory;
+
+    private JsonDataStore dataStore;
+
+    @BeforeEach
+    void setUp() {
+        dataStore = new JsonDataStore(directory.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataStore.shutdown();
+    }
+
+    // ==================== HELPER METHODS ====================
+
+    private static List<Item> items(int count) {
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(new Item("I" + i, i * 10));
+        }
+        return items;
+    }
+
+    private static void assertSameItems(List<Item> expected, List<Item> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).id, actual.get(i).id);
+            assertEquals(expected.get(i).quantity, actual.get(i).quantity);
+        }
+    }
+
+    private List<Item> loadFromDisk() {
+        JsonDataStore fresh = new JsonDataStore(directory.toString());
+        return fresh.load(FILENAME, LIST_TYPE);
+    }
+
+    // ==================== RESIDENT MODE TESTS ====================
+
+    @Test
+    @DisplayName("Should keep saved collections in memory until flushed in resident mode")
+    void shouldKeepSavesInMemoryUntilFlush() {
+        // ARRANGE
+        dataStore.enableResidentMode(60_000);
+        List<Item> items = items(3);
+
+        // ACT
+        dataStore.save(FILENAME, items);
+
+        // ASSERT
+        assertFalse(Files.exists(directory.resolve(FILENAME)));
+        assertSameItems(items, dataStore.load(FILENAME, LIST_TYPE));
+
+        dataStore.flush();
+        assertSameItems(items, loadFromDisk());
+    }
+
+    @Test
+    @DisplayName("Should write through immediately with saveNow in resident mode")
+    void shouldWriteThroughWithSaveNow() {
+        // ARRANGE
+        dataStore.enableResidentMode(60_000);
+        List<Item> items = items(2);
+
+        // ACT
+        dataStore.saveNow(FILENAME, items);
+
+        // ASSERT
+        assertSameItems(items, loadFromDisk());
+    }
+
+    @Test
+    @DisplayName("Should flush dirty collections on shutdown")
+    void shouldFlushOnShutdown() {
+        // ARRANGE
+        dataStore.enableResidentMode(60_000);
+        List<Item> items = items(4);
+        dataStore.save(FILENAME, items);
+
+        // ACT
+        dataStore.shutdown();
+
+        // ASSERT
+        assertSameItems(items, loadFromDisk());
+    }
+
+    @Test
+    @DisplayName("Should reject a non-positive flush interval")
+    void shouldRejectNonPositiveFlushInterval() {
+        assertThrows(IllegalArgumentException.class, () -> dataStore.enableResidentMode(0));
+        assertFalse(dataStore.isResident());
+    }
+
+    // ==================== STORAGE FORMAT TESTS ====================
+
+    @Test
+    @DisplayName("Should migrate collection files between formats, including files already converted")
+    void shouldMigrateBetweenFormats() throws IOException {
+        // ARRANGE
+        List<Item> items = items(50);
+        dataStore.save(FILENAME, items);
+
+        // ACT
+        dataStore.migrateAll(StorageFormat.GZIP);
+
+        // ASSERT
+        try (InputStream in = Files.newInputStream(directory.resolve(FILENAME))) {
+            assertEquals(0x1f, in.read());
+            assertEquals(0x8b, in.read());
+        }
+        assertSameItems(items, loadFromDisk());
+
+        dataStore.migrateAll(StorageFormat.PRETTY);
+        assertTrue(Files.readString(directory.resolve(FILENAME)).contains("\n  {"));
+        assertSameItems(items, loadFromDisk());
+        assertEquals(StorageFormat.PRETTY, dataStore.getStorageFormat());
+    }
+
+    // ==================== TEST RECORD ====================
+
+    static class Item {
+        String id;
+        int quantity;
+
+        Item(String id, int quantity) {
+            this.id = id;
+            this.quantity = quantity;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.syos.frameworks.persistence;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@DisplayName("JSON Journal Tests")
+class JsonJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<JsonJournal> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(JsonJournal::close);
+    }
+
+    // ==================== HELPER METHODS ====================
+
+    private JsonJournal journal(boolean durable) {
+        JsonJournal journal = new JsonJournal(directory.resolve("entries.jsonl"), new DataFileLock(null),
+                new Gson(), JsonJournal.DEFAULT_SYNC_BATCH_SIZE, durable, null);
+        opened.add(journal);
+        return journal;
+    }
+
+    private static List<Entry> scanAll(JsonJournal journal) {
+        List<Entry> entries = new ArrayList<>();
+        journal.scanFrom(0, Entry.class, (offset, entry) -> entries.add(entry));
+        return entries;
+    }
+
+    private static List<Entry> scanFrom(JsonJournal journal, long offset) {
+        List<Entry> entries = new ArrayList<>();
+        journal.scanFrom(offset, Entry.class, (position, entry) -> entries.add(entry));
+        return entries;
+    }
+
+    private static List<Integer> sequences(List<Entry> entries) {
+        return entries.stream().map(entry -> entry.sequence).toList();
+    }
+
+    // ==================== APPEND AND SCAN TESTS ====================
+
+    @Test
+    @DisplayName("Should scan appended records in order with offsets that readAt accepts")
+    void shouldScanRecordsWithOffsets() {
+        // ARRANGE
+        JsonJournal journal = journal(false);
+        for (int i = 1; i <= 5; i++) {
+            journal.append(new Entry(i, "entry " + i));
+        }
+
+        // ACT
+        List<Long> offsets = new ArrayList<>();
+        long end = journal.scanFrom(0, Entry.class, (offset, entry) -> offsets.add(offset));
+        List<Entry> read = journal.readAt(List.of(offsets.get(3), offsets.get(1)), Entry.class);
+
+        // ASSERT
+        assertEquals(5, offsets.size());
+        assertEquals(0L, offsets.get(0));
+        assertEquals(4, read.get(0).sequence);
+        assertEquals(2, read.get(1).sequence);
+        assertEquals("entry 2", read.get(1).text);
+        assertEquals(List.of(), sequences(scanFrom(journal, end)));
+    }
+
+    @Test
+    @DisplayName("Should resume a scan from the offset the previous scan returned")
+    void shouldResumeScanFromReturnedOffset() {
+        // ARRANGE
+        JsonJournal journal = journal(false);
+        journal.appendAll(List.of(new Entry(1, "a"), new Entry(2, "b")));
+        long end = journal.scanFrom(0, Entry.class, (offset, entry) -> {
+        });
+
+        // ACT
+        journal.append(new Entry(3, "c"));
+
+        // ASSERT
+        assertEquals(List.of(3), sequences(scanFrom(journal, end)));
+    }
+
+    @Test
+    @DisplayName("Should ignore a truncated trailing line until it is completed")
+    void shouldIgnoreTruncatedTrailingLine() throws IOException {
+        // ARRANGE
+        JsonJournal journal = journal(false);
+        journal.appendAll(List.of(new Entry(1, "a"), new Entry(2, "b")));
+        journal.close();
+        Path path = journal.getPath();
+        Files.write(path, "{\"sequence\":3,\"te".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        // ACT
+        long end = journal.scanFrom(0, Entry.class, (offset, entry) -> {
+        });
+
+        // ASSERT
+        assertEquals(List.of(1, 2), sequences(scanAll(journal)));
+        Files.write(path, "xt\":\"c\"}\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertEquals(List.of(3), sequences(scanFrom(journal, end)));
+    }
+
+    // ==================== REMOVE IF TESTS ====================
+
+    @Test
+    @DisplayName("Should hand removed records over before rewriting the journal without them")
+    void shouldRemoveMatchingRecords() {
+        // ARRANGE
+        JsonJournal journal = journal(false);
+        for (int i = 1; i <= 6; i++) {
+            journal.append(new Entry(i, "entry " + i));
+        }
+        List<Integer> handedOver = new ArrayList<>();
+
+        // ACT
+        List<Entry> removed = journal.removeIf(Entry.class, entry -> entry.sequence % 2 == 0,
+                entries -> {
+                    // The journal still holds every record at this point
+                    assertEquals(6, scanAll(journal).size());
+                    handedOver.addAll(sequences(entries));
+                });
+
+        // ASSERT
+        assertEquals(List.of(2, 4, 6), sequences(removed));
+        assertEquals(List.of(2, 4, 6), handedOver);
+        assertEquals(List.of(1, 3, 5), sequences(scanAll(journal)));
+
+        journal.append(new Entry(7, "entry 7"));
+        assertEquals(List.of(1, 3, 5, 7), sequences(scanAll(journal)));
+    }
+
+    @Test
+    @DisplayName("Should leave the journal untouched when nothing matches")
+    void shouldNotRewriteWhenNothingMatches() {
+        // ARRANGE
+        JsonJournal journal = journal(false);
+        journal.appendAll(List.of(new Entry(1, "a"), new Entry(2, "b")));
+
+        // ACT
+        List<Entry> removed = journal.removeIf(Entry.class, entry -> false,
+                entries -> fail("Nothing should be handed over"));
+
+        // ASSERT
+        assertTrue(removed.isEmpty());
+        assertEquals(List.of(1, 2), sequences(scanAll(journal)));
+    }
+
+    // ==================== DURABLE JOURNAL TESTS ====================
+
+    @Test
+    @DisplayName("Should keep every record of concurrent group-committed appends")
+    void shouldKeepAllConcurrentDurableAppends() throws Exception {
+        // ARRANGE
+        JsonJournal journal = journal(true);
+        int threads = 8;
+        int perThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // ACT
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    journal.append(new Entry(thread * perThread + i, "thread " + thread));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // ASSERT
+        // Read through a second journal, which only sees what reached the file
+        JsonJournal reader = new JsonJournal(journal.getPath(), new DataFileLock(null), new Gson(),
+                JsonJournal.DEFAULT_SYNC_BATCH_SIZE, false, null);
+        List<Integer> read = sequences(scanAll(reader));
+        assertEquals(threads * perThread, read.size());
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            List<Integer> ownRecords = read.stream().filter(sequence -> sequence / perThread == thread).toList();
+            assertEquals(perThread, ownRecords.size());
+            for (int i = 1; i < ownRecords.size(); i++) {
+                assertTrue(ownRecords.get(i - 1) < ownRecords.get(i));
+            }
+        }
+    }
+
+    // ==================== TEST RECORD ====================
+
+    static class Entry {
+        int sequence;
+        String text;
+
+        Entry(int sequence, String text) {
+            this.sequence = sequence;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.syos.frameworks.persistence;
+
+import com.syos.entities.StockBatch;
+import com.syos.frameworks.persistence.JsonStockBatchRepository.StockBatchData;
+import com.syos.usecases.strategies.BatchOrder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@DisplayName("JSON Stock Batch Repository Tests")
+class JsonStockBatchRepositoryTest {
+    private static final LocalDate PURCHASED = LocalDate.now().minusDays(10);
+    private static final LocalDate EXPIRES = LocalDate.now().plusMonths(6);
+
+    @TempDir
+    Path directory;
+
+    private final List<JsonDataStore> stores = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(JsonDataStore::shutdown);
+    }
+
+    // ==================== HELPER METHODS ====================
+
+    /**
+     * Opens the repository on a fresh store, as a restarted process would.
+     */
+    private JsonStockBatchRepository restart() {
+        stores.forEach(JsonDataStore::shutdown);
+        JsonDataStore store = new JsonDataStore(directory.toString());
+        stores.add(store);
+        return new JsonStockBatchRepository(store);
+    }
+
+    private static int numberOf(String batchId) {
+        return Integer.parseInt(batchId.substring(1));
+    }
+
+    // ==================== SAVE TESTS ====================
+
+    @Test
+    @DisplayName("Should not overwrite a batch stored by an earlier run with a newly generated one")
+    void shouldNotReuseStoredBatchIdAfterRestart() {
+        // ARRANGE
+        // An earlier run generated more IDs than this one has so far
+        String storedId = "B" + (numberOf(new StockBatch("P0", PURCHASED, 1, EXPIRES).getBatchId()) + 1);
+        StockBatchData stored = new StockBatchData();
+        stored.batchId = storedId;
+        stored.productCode = "MILK";
+        stored.purchaseDate = PURCHASED.toString();
+        stored.quantity = 10;
+        stored.expiryDate = EXPIRES.toString();
+        restart();
+        stores.get(0).journal("stock_batches.jsonl").append(stored);
+
+        // ACT
+        JsonStockBatchRepository repository = restart();
+        StockBatch fresh = new StockBatch("BREAD", PURCHASED, 5, EXPIRES);
+        repository.save(fresh);
+
+        // ASSERT
+        assertTrue(numberOf(fresh.getBatchId()) > numberOf(storedId));
+        assertEquals("MILK", restart().findById(storedId).orElseThrow().getProductCode());
+        assertEquals(2, restart().findAll().size());
+    }
+
+    @Test
+    @DisplayName("Should reject saving a batch whose ID is already stored")
+    void shouldRejectDuplicateBatchId() {
+        // ARRANGE
+        JsonStockBatchRepository repository = restart();
+        repository.save(new StockBatch("B-MANUAL", "MILK", PURCHASED, 10, EXPIRES));
+
+        // ACT & ASSERT
+        assertThrows(IllegalArgumentException.class,
+                () -> repository.save(new StockBatch("B-MANUAL", "BREAD", PURCHASED, 5, EXPIRES)));
+        StockBatch kept = restart().findById("B-MANUAL").orElseThrow();
+        assertEquals("MILK", kept.getProductCode());
+        assertEquals(10, kept.getQuantity());
+    }
+
+    // ==================== DEPLETION TESTS ====================
+
+    @Test
+    @DisplayName("Should draw from the oldest batches and leave them untouched when stock is short")
+    void shouldDepleteOldestFirstOrNothing() {
+        // ARRANGE
+        JsonStockBatchRepository repository = restart();
+        repository.save(new StockBatch("OLD", "MILK", PURCHASED, 3, EXPIRES));
+        repository.save(new StockBatch("NEW", "MILK", PURCHASED.plusDays(1), 5, EXPIRES));
+
+        // ACT
+        List<StockBatch> depleted = repository.depleteStock("MILK", 4, BatchOrder.OLDEST_FIRST);
+        List<StockBatch> tooMuch = repository.depleteStock("MILK", 5, BatchOrder.OLDEST_FIRST);
+
+        // ASSERT
+        assertEquals(List.of("OLD", "NEW"), depleted.stream().map(StockBatch::getBatchId).toList());
+        assertTrue(tooMuch.isEmpty());
+        JsonStockBatchRepository reopened = restart();
+        assertEquals(0, reopened.findById("OLD").orElseThrow().getQuantity());
+        assertEquals(4, reopened.findById("NEW").orElseThrow().getQuantity());
+    }
+
+    @Test
+    @DisplayName("Should lose no decrement when sales deplete the same batch concurrently")
+    void shouldNotLoseConcurrentDecrements() throws Exception {
+        // ARRANGE
+        JsonStockBatchRepository repository = restart();
+        repository.save(new StockBatch("SHARED", "MILK", PURCHASED, 200, EXPIRES));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // ACT
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 20; i++) {
+                    assertFalse(repository.depleteStock("MILK", 1, BatchOrder.EXPIRY_FIRST).isEmpty());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // ASSERT
+        assertEquals(40, repository.findById("SHARED").orElseThrow().getQuantity());
+        assertEquals(40, restart().findById("SHARED").orElseThrow().getQuantity());
+    }
+}
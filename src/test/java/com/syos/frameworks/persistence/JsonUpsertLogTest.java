@@ -0,0 +1,226 @@
+package com.syos.frameworks.persistence;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@DisplayName("JSON Upsert Log Tests")
+class JsonUpsertLogTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<JsonJournal> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(JsonJournal::close);
+    }
+
+    // ==================== HELPER METHODS ====================
+
+    private JsonJournal journal(DataFileLock lock) {
+        JsonJournal journal = new JsonJournal(directory.resolve("records.jsonl"), lock, new Gson(),
+                JsonJournal.DEFAULT_SYNC_BATCH_SIZE, false, null);
+        opened.add(journal);
+        return journal;
+    }
+
+    /**
+     * Opens the log, replaying the file.
+     */
+    private JsonUpsertLog<Row> open() {
+        DataFileLock lock = new DataFileLock(null);
+        return new JsonUpsertLog<>(journal(lock), lock, Row.class, row -> row.key, row -> row.deleted);
+    }
+
+    /**
+     * Closes the open journals, as a shutdown would, and opens the log again.
+     */
+    private JsonUpsertLog<Row> reopen() {
+        opened.forEach(JsonJournal::close);
+        return open();
+    }
+
+    private static Map<String, Integer> liveSet(JsonUpsertLog<Row> log) {
+        Map<String, Integer> live = new TreeMap<>();
+        for (Row row : log.values()) {
+            live.put(row.key, row.value);
+        }
+        return live;
+    }
+
+    private int recordsOnDisk() {
+        opened.forEach(JsonJournal::close);
+        JsonJournal journal = journal(new DataFileLock(null));
+        int[] count = {0};
+        journal.scanFrom(0, Row.class, (offset, row) -> count[0]++);
+        return count[0];
+    }
+
+    // ==================== UPSERT TESTS ====================
+
+    @Test
+    @DisplayName("Should return the latest record for a key")
+    void shouldReturnLatestRecord() {
+        // ARRANGE
+        JsonUpsertLog<Row> log = open();
+
+        // ACT
+        log.put(new Row("A", 1));
+        log.put(new Row("B", 2));
+        log.put(new Row("A", 3));
+
+        // ASSERT
+        assertEquals(3, log.get("A").orElseThrow().value);
+        assertEquals(Map.of("A", 3, "B", 2), liveSet(log));
+        assertEquals(Map.of("A", 3, "B", 2), liveSet(reopen()));
+    }
+
+    @Test
+    @DisplayName("Should not append a replacement for a missing key")
+    void shouldNotReplaceMissingKey() {
+        // ARRANGE
+        JsonUpsertLog<Row> log = open();
+        log.put(new Row("A", 1));
+
+        // ACT
+        boolean replaced = log.replace(new Row("B", 2));
+
+        // ASSERT
+        assertFalse(replaced);
+        assertEquals(1, recordsOnDisk());
+    }
+
+    @Test
+    @DisplayName("Should not append an insert for an existing key")
+    void shouldNotInsertExistingKey() {
+        // ARRANGE
+        JsonUpsertLog<Row> log = open();
+        log.put(new Row("A", 1));
+
+        // ACT
+        boolean inserted = log.insert(new Row("A", 2));
+
+        // ASSERT
+        assertFalse(inserted);
+        assertEquals(1, log.get("A").orElseThrow().value);
+        assertEquals(1, recordsOnDisk());
+    }
+
+    @Test
+    @DisplayName("Should write nothing when a batch replacement names a missing key")
+    void shouldReplaceAllOrNothing() {
+        // ARRANGE
+        JsonUpsertLog<Row> log = open();
+        log.putAll(List.of(new Row("A", 1), new Row("B", 2)));
+
+        // ACT
+        String missing = log.replaceAll(List.of(new Row("A", 10), new Row("C", 30)));
+
+        // ASSERT
+        assertEquals("C", missing);
+        assertEquals(Map.of("A", 1, "B", 2), liveSet(log));
+        assertEquals(2, recordsOnDisk());
+    }
+
+    @Test
+    @DisplayName("Should keep the first of several initial records with the same key")
+    void shouldKeepFirstOfDuplicateInitialRecords() {
+        // ACT
+        JsonUpsertLog<Row> log = open();
+        log.putAll(List.of(new Row("A", 1), new Row("A", 2), new Row("B", 3)));
+
+        // ASSERT
+        assertEquals(Map.of("A", 1, "B", 3), liveSet(log));
+        assertEquals(2, recordsOnDisk());
+    }
+
+    // ==================== TOMBSTONE TESTS ====================
+
+    @Test
+    @DisplayName("Should hide a record behind its tombstone, also after a restart")
+    void shouldApplyTombstones() {
+        // ARRANGE
+        JsonUpsertLog<Row> log = open();
+        log.putAll(List.of(new Row("A", 1), new Row("B", 2)));
+
+        // ACT
+        boolean removed = log.remove(Row.tombstone("A"));
+
+        // ASSERT
+        assertTrue(removed);
+        assertTrue(log.get("A").isEmpty());
+        assertFalse(log.remove(Row.tombstone("A")));
+        assertEquals(Map.of("B", 2), liveSet(reopen()));
+    }
+
+    // ==================== COMPACTION TESTS ====================
+
+    @Test
+    @DisplayName("Should compact the log down to the live set once garbage outweighs it")
+    void shouldCompactToLiveSet() {
+        // ARRANGE
+        JsonUpsertLog<Row> log = open();
+        log.putAll(List.of(new Row("A", 0), new Row("B", 0), new Row("C", 0)));
+        log.remove(Row.tombstone("C"));
+
+        // ACT
+        for (int i = 1; i <= JsonUpsertLog.MIN_COMPACTION_GARBAGE; i++) {
+            log.put(new Row(i % 2 == 0 ? "A" : "B", i));
+        }
+
+        // ASSERT
+        Map<String, Integer> live = liveSet(log);
+        assertEquals(Map.of("A", JsonUpsertLog.MIN_COMPACTION_GARBAGE, "B", JsonUpsertLog.MIN_COMPACTION_GARBAGE - 1),
+                live);
+        assertTrue(recordsOnDisk() < 10, "The log should have been compacted");
+        assertEquals(live, liveSet(reopen()));
+    }
+
+    // ==================== GENERATION TESTS ====================
+
+    @Test
+    @DisplayName("Should advance the generation on every applied record, even a same-size update")
+    void shouldAdvanceGeneration() {
+        // ARRANGE
+        JsonUpsertLog<Row> log = open();
+        log.put(new Row("A", 1));
+        long before = log.generation();
+
+        // ACT
+        log.put(new Row("A", 2));
+
+        // ASSERT
+        assertEquals(before + 1, log.generation());
+        assertEquals(2, reopen().generation());
+    }
+
+    // ==================== TEST RECORD ====================
+
+    static class Row {
+        String key;
+        int value;
+        boolean deleted;
+
+        Row(String key, int value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        static Row tombstone(String key) {
+            Row row = new Row(key, 0);
+            row.deleted = true;
+            return row;
+        }
+    }
+}
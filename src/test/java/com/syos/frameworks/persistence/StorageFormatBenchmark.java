@@ -0,0 +1,113 @@
+package com.syos.frameworks.persistence;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares write time, read time and size on disk for each StorageFormat.
+ * Not a unit test; run it manually from the project root after
+ * mvn test-compile, with target/classes, target/test-classes and Gson on the
+ * classpath. The optional argument is the number of bills (default 20000).
+ */
+public class StorageFormatBenchmark {
+    private static final String FILENAME = "storage_format_benchmark.json";
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int recordCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        JsonDataStore dataStore = JsonDataStore.getInstance();
+        StorageFormat originalFormat = dataStore.getStorageFormat();
+        Path file = Paths.get("data", FILENAME);
+        Type listType = new TypeToken<ArrayList<SampleBill>>() {
+        }.getType();
+        List<SampleBill> bills = sampleBills(recordCount);
+
+        System.out.printf("%d bill records, best of %d rounds%n", recordCount, ROUNDS);
+        System.out.printf("%-10s %12s %12s %14s%n", "Format", "Write (ms)", "Read (ms)", "Bytes on disk");
+
+        try {
+            for (StorageFormat format : StorageFormat.values()) {
+                dataStore.setStorageFormat(format);
+                long bestWrite = Long.MAX_VALUE;
+                long bestRead = Long.MAX_VALUE;
+
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    dataStore.save(FILENAME, bills);
+                    bestWrite = Math.min(bestWrite, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    List<SampleBill> loaded = dataStore.load(FILENAME, listType);
+                    bestRead = Math.min(bestRead, System.nanoTime() - start);
+                    if (loaded.size() != recordCount) {
+                        throw new IllegalStateException("Read back " + loaded.size() + " records");
+                    }
+                }
+
+                System.out.printf("%-10s %12.1f %12.1f %14d%n", format,
+                        bestWrite / 1e6, bestRead / 1e6, Files.size(file));
+            }
+        } finally {
+            dataStore.setStorageFormat(originalFormat);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<SampleBill> sampleBills(int count) {
+        List<SampleBill> bills = new ArrayList<>(count);
+        LocalDateTime date = LocalDateTime.of(2023, 1, 1, 9, 0);
+        for (int i = 1; i <= count; i++) {
+            SampleBill bill = new SampleBill();
+            bill.serialNumber = i;
+            bill.billDate = date.plusMinutes(i * 7L).toString();
+            bill.items = new ArrayList<>();
+            for (int j = 0; j < 3; j++) {
+                SampleItem item = new SampleItem();
+                item.productCode = "P" + (100 + (i + j) % 250);
+                item.productName = "Product " + item.productCode;
+                item.unit = "pcs";
+                item.quantity = 1 + (i + j) % 5;
+                item.price = 50.0 + (i + j) % 400;
+                item.discountPercentage = (i + j) % 4 == 0 ? 10.0 : 0.0;
+                bill.items.add(item);
+                bill.subtotal += item.price * item.quantity;
+            }
+            bill.total = bill.subtotal;
+            bill.cashTendered = Math.ceil(bill.total / 100) * 100;
+            bill.change = bill.cashTendered - bill.total;
+            bill.transactionType = i % 3 == 0 ? "ONLINE" : "COUNTER";
+            bills.add(bill);
+        }
+        return bills;
+    }
+
+    private static class SampleBill {
+        int serialNumber;
+        String billDate;
+        List<SampleItem> items;
+        double subtotal;
+        double discount;
+        double total;
+        double cashTendered;
+        double change;
+        String transactionType;
+        String customerId;
+    }
+
+    private static class SampleItem {
+        String productCode;
+        String productName;
+        String unit;
+        int quantity;
+        double price;
+        double discountPercentage;
+    }
+}
@@ -0,0 +1,203 @@
+package com.syos.frameworks.persistence;
+
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the keyed collections of a JsonDataStore with the write-ahead log
+ * enabled. A crash is simulated by opening a second store on the same
+ * directory without shutting the first one down, so nothing is checkpointed.
+ */
+@DisplayName("Write-Ahead Log Tests")
+class WriteAheadLogTest {
+    private static final String FILENAME = "items.json";
+    private static final Type LIST_TYPE = new TypeToken<ArrayList<Item>>() {
+    }.getType();
+
+    @TempDir
+    Path directory;
+
+    private final List<JsonDataStore> stores = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty("syos.json.wal", "true");
+        // Checkpoints only when a test asks for one
+        System.setProperty("syos.json.checkpointMs", "3600000");
+    }
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(JsonDataStore::shutdown);
+        System.clearProperty("syos.json.wal");
+        System.clearProperty("syos.json.checkpointMs");
+    }
+
+    // ==================== HELPER METHODS ====================
+
+    private JsonDataStore startStore() {
+        JsonDataStore store = new JsonDataStore(directory.toString());
+        stores.add(store);
+        return store;
+    }
+
+    private static JsonKeyedCollection<Item> items(JsonDataStore store) {
+        return store.keyed(FILENAME, LIST_TYPE, item -> item.id);
+    }
+
+    private static Map<String, Integer> contents(JsonKeyedCollection<Item> items) {
+        Map<String, Integer> contents = new TreeMap<>();
+        for (Item item : items.values()) {
+            contents.put(item.id, item.quantity);
+        }
+        return contents;
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "wal-*.jsonl")) {
+            files.forEach(segments::add);
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    // ==================== RECOVERY TESTS ====================
+
+    @Test
+    @DisplayName("Should recover acknowledged mutations after a crash before any checkpoint")
+    void shouldRecoverAfterCrash() {
+        // ARRANGE
+        JsonKeyedCollection<Item> items = items(startStore());
+        items.put(new Item("A", 1));
+        items.put(new Item("B", 2));
+        items.put(new Item("A", 3));
+        items.remove("B");
+        items.insert(new Item("C", 4));
+
+        // ACT
+        JsonKeyedCollection<Item> recovered = items(startStore());
+
+        // ASSERT
+        assertFalse(Files.exists(directory.resolve(FILENAME)));
+        assertEquals(Map.of("A", 3, "C", 4), contents(recovered));
+    }
+
+    @Test
+    @DisplayName("Should recover every mutation acknowledged to concurrent writers")
+    void shouldRecoverConcurrentMutations() throws Exception {
+        // ARRANGE
+        JsonKeyedCollection<Item> items = items(startStore());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 25; i++) {
+                    items.put(new Item(thread + "-" + i, i));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // ACT
+        JsonKeyedCollection<Item> recovered = items(startStore());
+
+        // ASSERT
+        assertEquals(200, recovered.values().size());
+        assertEquals(contents(items), contents(recovered));
+    }
+
+    @Test
+    @DisplayName("Should ignore a torn final entry whose writer was never acknowledged")
+    void shouldIgnoreTornFinalEntry() throws IOException {
+        // ARRANGE
+        JsonKeyedCollection<Item> items = items(startStore());
+        items.put(new Item("A", 1));
+        items.put(new Item("B", 2));
+        List<Path> segments = segments();
+        Files.writeString(segments.get(segments.size() - 1), "{\"lsn\":3,\"file\":\"items.js",
+                StandardOpenOption.APPEND);
+
+        // ACT
+        JsonKeyedCollection<Item> recovered = items(startStore());
+
+        // ASSERT
+        assertEquals(Map.of("A", 1, "B", 2), contents(recovered));
+    }
+
+    // ==================== CHECKPOINT TESTS ====================
+
+    @Test
+    @DisplayName("Should write dirty collections and discard covered segments at a checkpoint")
+    void shouldCheckpointAndDiscardSegments() throws IOException {
+        // ARRANGE
+        JsonDataStore store = startStore();
+        JsonKeyedCollection<Item> items = items(store);
+        items.put(new Item("A", 1));
+        items.put(new Item("B", 2));
+        List<Path> before = segments();
+
+        // ACT
+        store.flush();
+
+        // ASSERT
+        assertTrue(Files.exists(directory.resolve(FILENAME)));
+        List<Path> after = segments();
+        assertEquals(1, after.size());
+        assertFalse(before.contains(after.get(0)));
+        assertEquals(0, Files.size(after.get(0)));
+
+        items.put(new Item("C", 3));
+        assertEquals(Map.of("A", 1, "B", 2, "C", 3), contents(items(startStore())));
+    }
+
+    @Test
+    @DisplayName("Should carry entries of collections not yet loaded into the next segment")
+    void shouldCarryForwardUnclaimedEntries() {
+        // ARRANGE
+        items(startStore()).put(new Item("A", 1));
+        JsonDataStore restarted = startStore();
+
+        // ACT
+        restarted.flush();
+
+        // ASSERT
+        assertFalse(Files.exists(directory.resolve(FILENAME)));
+        assertEquals(Map.of("A", 1), contents(items(startStore())));
+    }
+
+    // ==================== TEST RECORD ====================
+
+    static class Item {
+        String id;
+        int quantity;
+
+        Item(String id, int quantity) {
+            this.id = id;
+            this.quantity = quantity;
+        }
+    }
+}
@@ -248,6 +248,23 @@ class BillTest {
         assertThrows(UnsupportedOperationException.class, () -> items.add(createSimpleItem(5.00, 1)));
     }
 
+    @Test
+    @DisplayName("Should copy bill with a new serial number")
+    void shouldCopyBillWithNewSerialNumber() {
+        Bill draft = new Bill.Builder()
+                .addItem(createSimpleItem(10.00, 2))
+                .cashTendered(50.00)
+                .build();
+
+        Bill bill = draft.withSerialNumber(7);
+
+        assertEquals(0, draft.getSerialNumber());
+        assertEquals(7, bill.getSerialNumber());
+        assertEquals(draft.getBillDate(), bill.getBillDate());
+        assertEquals(draft.getTotal(), bill.getTotal(), 0.001);
+        assertEquals(draft.getItems().size(), bill.getItems().size());
+    }
+
     // ==================== BILL ITEM TESTS ====================
 
     @Test
@@ -0,0 +1,110 @@
+package frameworks.database;
+
+import com.syos.frameworks.database.DatabaseConfig;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import java.util.Properties;
+
+@DisplayName("Database Config Tests")
+class DatabaseConfigTest {
+
+    // ==================== HELPER METHODS ====================
+
+    private Properties properties(String... keysAndValues) {
+        Properties properties = new Properties();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            properties.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return properties;
+    }
+
+    // ==================== DEFAULT TESTS ====================
+
+    @Test
+    @DisplayName("Should use defaults when nothing is configured")
+    void shouldUseDefaults() {
+        DatabaseConfig config = DatabaseConfig.from(new Properties(), Map.of(), new Properties());
+
+        assertTrue(config.getUrl().startsWith("jdbc:mysql://localhost:3306/syos_db"));
+        assertEquals("root", config.getUser());
+        assertEquals(10, config.getMaximumPoolSize());
+        assertEquals(30000, config.getConnectionTimeoutMs());
+        assertEquals("true", config.getDriverProperties().getProperty("rewriteBatchedStatements"));
+        assertEquals("true", config.getDriverProperties().getProperty("useServerPrepStmts"));
+        assertEquals("true", config.getDriverProperties().getProperty("cacheResultSetMetadata"));
+    }
+
+    // ==================== PRECEDENCE TESTS ====================
+
+    @Test
+    @DisplayName("Should let the properties file override defaults")
+    void shouldLetFileOverrideDefaults() {
+        DatabaseConfig config = DatabaseConfig.from(
+                properties("syos.db.pool.maximumSize", "40", "syos.db.driver.useCompression", "true"),
+                Map.of(), new Properties());
+
+        assertEquals(40, config.getMaximumPoolSize());
+        assertEquals("true", config.getDriverProperties().getProperty("useCompression"));
+    }
+
+    @Test
+    @DisplayName("Should let environment variables override the properties file")
+    void shouldLetEnvironmentOverrideFile() {
+        DatabaseConfig config = DatabaseConfig.from(
+                properties("syos.db.pool.maximumSize", "40"),
+                Map.of("SYOS_DB_POOL_MAXIMUMSIZE", "50", "SYOS_DB_PASSWORD", "secret"),
+                new Properties());
+
+        assertEquals(50, config.getMaximumPoolSize());
+        assertEquals("secret", config.getPassword());
+    }
+
+    @Test
+    @DisplayName("Should let environment variables override driver properties by upper-cased name")
+    void shouldLetEnvironmentOverrideDriverProperties() {
+        DatabaseConfig config = DatabaseConfig.from(
+                new Properties(),
+                Map.of("SYOS_DB_DRIVER_REWRITEBATCHEDSTATEMENTS", "false"),
+                new Properties());
+
+        assertEquals("false", config.getDriverProperties().getProperty("rewriteBatchedStatements"));
+    }
+
+    @Test
+    @DisplayName("Should add driver properties from environment variables not configured elsewhere")
+    void shouldAddDriverPropertiesFromEnvironment() {
+        DatabaseConfig config = DatabaseConfig.from(
+                new Properties(),
+                Map.of("SYOS_DB_DRIVER_useSSL", "false", "SYOS_DB_UNKNOWN", "ignored", "PATH", "/usr/bin"),
+                new Properties());
+
+        Properties driver = config.getDriverProperties();
+        assertEquals("false", driver.getProperty("useSSL"));
+        assertEquals(7, driver.size());
+    }
+
+    @Test
+    @DisplayName("Should let system properties override environment variables")
+    void shouldLetSystemPropertiesOverrideEnvironment() {
+        DatabaseConfig config = DatabaseConfig.from(
+                new Properties(),
+                Map.of("SYOS_DB_POOL_MAXIMUMSIZE", "50"),
+                properties("syos.db.pool.maximumSize", "60", "java.version", "ignored"));
+
+        assertEquals(60, config.getMaximumPoolSize());
+    }
+
+    @Test
+    @DisplayName("Should reject non-numeric pool settings")
+    void shouldRejectNonNumericPoolSettings() {
+        DatabaseConfig config = DatabaseConfig.from(
+                properties("syos.db.pool.minimumIdle", "many"), Map.of(), new Properties());
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                config::getMinimumIdle);
+        assertTrue(exception.getMessage().contains("syos.db.pool.minimumIdle"));
+    }
+}
@@ -0,0 +1,339 @@
+package frameworks.database;
+
+import com.syos.entities.Bill;
+import com.syos.frameworks.database.DatabaseManager;
+import com.syos.frameworks.database.MySQLBillRepository;
+import com.syos.frameworks.database.MySQLStockBatchRepository;
+import com.syos.frameworks.database.MySQLUserRepository;
+import com.syos.frameworks.database.SchemaMigrator;
+import com.syos.usecases.strategies.BatchOrder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Checks with EXPLAIN that the optimizer chooses the indexes created by
+ * {@link SchemaMigrator} for the queries of the MySQL repositories. Each
+ * query is recorded from a real repository call against a mocked
+ * connection, then explained with the same parameters on the test database,
+ * so the test follows the repositories' SQL as it changes.
+ * A fixture of a few thousand rows, removed again afterwards, gives the
+ * optimizer realistic statistics; on near-empty tables it may prefer a scan.
+ * Runs against a local MySQL test database (-Dsyos.test.db.url, .user,
+ * .password) and is skipped when none is reachable.
+ */
+@DisplayName("Schema Index Usage Tests")
+class SchemaIndexUsageTest {
+
+    private static final String DEFAULT_URL = "jdbc:mysql://localhost:3306/syos_test"
+            + "?useSSL=false&serverTimezone=UTC&allowPublicKeyRetrieval=true&connectTimeout=2000";
+
+    private static final int FIXTURE_ROWS = 2000;
+    private static final int FIRST_FIXTURE_SERIAL = 900000;
+    private static final LocalDate FIXTURE_START = LocalDate.of(2025, 1, 1);
+    private static final int LATEST_SCHEMA_VERSION = 4;
+
+    private static Connection conn;
+
+    @BeforeAll
+    static void connect() throws SQLException {
+        try {
+            conn = DriverManager.getConnection(
+                    System.getProperty("syos.test.db.url", DEFAULT_URL),
+                    System.getProperty("syos.test.db.user", "root"),
+                    System.getProperty("syos.test.db.password", ""));
+        } catch (SQLException e) {
+            assumeTrue(false, "No MySQL test database available: " + e.getMessage());
+        }
+        new SchemaMigrator().migrate(conn);
+        removeFixture();
+        insertFixture();
+    }
+
+    @AfterAll
+    static void disconnect() throws SQLException {
+        if (conn != null) {
+            removeFixture();
+            conn.close();
+        }
+    }
+
+    // ==================== FIXTURE ====================
+
+    /**
+     * Products, users, batches spread over a year, and bills of which only one
+     * in twenty is ONLINE, so that every predicate below is selective.
+     */
+    private static void insertFixture() throws SQLException {
+        try (PreparedStatement products = conn.prepareStatement(
+                "INSERT INTO products (code, name, unit, price) VALUES (?, 'Fixture', 'pcs', 1.00)");
+                PreparedStatement users = conn.prepareStatement(
+                        "INSERT INTO users (user_id, name, email, password_hash) VALUES (?, 'Fixture', ?, 'x')");
+                PreparedStatement batches = conn.prepareStatement(
+                        "INSERT INTO stock_batches (batch_id, product_code, purchase_date, quantity, expiry_date) " +
+                                "VALUES (?, ?, ?, ?, ?)");
+                PreparedStatement bills = conn.prepareStatement(
+                        "INSERT INTO bills (serial_number, bill_date, subtotal, discount, total, cash_tendered, " +
+                                "change_amount, transaction_type) VALUES (?, ?, 1, 0, 1, 1, 0, ?)");
+                PreparedStatement items = conn.prepareStatement(
+                        "INSERT INTO bill_items (bill_serial_number, product_code, product_name, quantity, price, " +
+                                "discount_percentage) VALUES (?, ?, 'Fixture', 1, 1, 0)")) {
+
+            for (int i = 0; i < 20; i++) {
+                products.setString(1, productCode(i));
+                products.addBatch();
+            }
+            products.executeBatch();
+
+            for (int i = 0; i < FIXTURE_ROWS; i++) {
+                users.setString(1, String.format("IDX-U%04d", i));
+                users.setString(2, email(i));
+                users.addBatch();
+
+                LocalDate purchaseDate = FIXTURE_START.plusDays(i % 365);
+                batches.setString(1, String.format("IDX-B%04d", i));
+                batches.setString(2, productCode(i % 20));
+                batches.setDate(3, java.sql.Date.valueOf(purchaseDate));
+                batches.setInt(4, i % 7);
+                batches.setDate(5, java.sql.Date.valueOf(purchaseDate.plusDays(400)));
+                batches.addBatch();
+
+                bills.setInt(1, FIRST_FIXTURE_SERIAL + i);
+                bills.setTimestamp(2, Timestamp.valueOf(FIXTURE_START.plusDays(i % 365).atTime(10, 0)));
+                bills.setString(3, i % 20 == 0 ? "ONLINE" : "COUNTER");
+                bills.addBatch();
+
+                items.setInt(1, FIRST_FIXTURE_SERIAL + i);
+                items.setString(2, productCode(i % 20));
+                items.addBatch();
+            }
+            users.executeBatch();
+            batches.executeBatch();
+            bills.executeBatch();
+            items.executeBatch();
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ANALYZE TABLE bills, bill_items, stock_batches, users");
+        }
+    }
+
+    private static void removeFixture() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM bill_items WHERE bill_serial_number >= " + FIRST_FIXTURE_SERIAL);
+            stmt.executeUpdate("DELETE FROM bills WHERE serial_number >= " + FIRST_FIXTURE_SERIAL);
+            stmt.executeUpdate("DELETE FROM stock_batches WHERE batch_id LIKE 'IDX-%'");
+            stmt.executeUpdate("DELETE FROM users WHERE user_id LIKE 'IDX-%'");
+            stmt.executeUpdate("DELETE FROM products WHERE code LIKE 'IDX-%'");
+        }
+    }
+
+    private static String productCode(int i) {
+        return String.format("IDX-P%02d", i);
+    }
+
+    private static String email(int i) {
+        return String.format("idx-user%04d@example.com", i);
+    }
+
+    // ==================== HELPER METHODS ====================
+
+    /**
+     * A statement a repository prepared, with the parameters it bound.
+     */
+    private record RecordedStatement(String sql, Map<Integer, Object> parameters) {
+    }
+
+    /**
+     * Runs a repository call with DatabaseManager mocked. Its connections
+     * record the statements the repository prepares instead of running them,
+     * and every query returns no rows.
+     *
+     * @param repositoryCall creates the repository and calls it
+     * @return the prepared statements in order
+     */
+    private static List<RecordedStatement> recordStatements(Runnable repositoryCall) throws SQLException {
+        List<RecordedStatement> statements = new ArrayList<>();
+        Connection recording = mock(Connection.class, invocation -> {
+            if (!invocation.getMethod().getName().equals("prepareStatement")) {
+                return RETURNS_DEFAULTS.answer(invocation);
+            }
+            RecordedStatement statement = new RecordedStatement(invocation.getArgument(0), new TreeMap<>());
+            statements.add(statement);
+            return mock(PreparedStatement.class, call -> {
+                String name = call.getMethod().getName();
+                if (name.startsWith("set") && call.getArguments().length == 2) {
+                    statement.parameters().put(call.getArgument(0), call.getArgument(1));
+                    return null;
+                }
+                if (name.equals("executeQuery")) {
+                    return mock(ResultSet.class);
+                }
+                return RETURNS_DEFAULTS.answer(call);
+            });
+        });
+        DatabaseManager dbManager = mock(DatabaseManager.class);
+        when(dbManager.getConnection()).thenReturn(recording);
+
+        try (MockedStatic<DatabaseManager> managers = mockStatic(DatabaseManager.class)) {
+            managers.when(DatabaseManager::getInstance).thenReturn(dbManager);
+            repositoryCall.run();
+        }
+        assertFalse(statements.isEmpty(), "The repository call prepared no statement");
+        return statements;
+    }
+
+    /**
+     * Runs EXPLAIN on the first statement of a repository call and returns
+     * the index the optimizer chose for each table (by alias), or an empty
+     * string where it reads without one.
+     */
+    private Map<String, String> chosenKeys(Runnable repositoryCall) throws SQLException {
+        return chosenKeys(recordStatements(repositoryCall).get(0));
+    }
+
+    private Map<String, String> chosenKeys(RecordedStatement statement) throws SQLException {
+        return chosenKeys(statement.sql(), statement.parameters().values().toArray());
+    }
+
+    private Map<String, String> chosenKeys(String sql, Object... parameters) throws SQLException {
+        Map<String, String> keys = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                stmt.setObject(i + 1, parameters[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String key = rs.getString("key");
+                    keys.put(rs.getString("table"), key != null ? key : "");
+                }
+            }
+        }
+        return keys;
+    }
+
+    // ==================== MIGRATION TESTS ====================
+
+    @Test
+    @DisplayName("Should migrate to the latest version and not reapply recorded migrations")
+    void shouldNotReapplyRecordedMigrations() throws SQLException {
+        int version = new SchemaMigrator().migrate(conn);
+
+        assertEquals(LATEST_SCHEMA_VERSION, version);
+        assertEquals(version, new SchemaMigrator().migrate(conn));
+    }
+
+    // ==================== BILL FINDER TESTS ====================
+
+    @Test
+    @DisplayName("Should use bill date index, and items index for the join, when finding bills by date")
+    void shouldUseBillDateIndexForDateRange() throws SQLException {
+        LocalDate date = FIXTURE_START.plusDays(14);
+
+        Map<String, String> keys = chosenKeys(() -> new MySQLBillRepository().findByDate(date));
+
+        assertEquals("idx_bills_date_type", keys.get("b"));
+        assertEquals("idx_bill_items_bill", keys.get("i"));
+    }
+
+    @Test
+    @DisplayName("Should not be able to use an index for DATE(bill_date)")
+    void shouldNotUseIndexForDateFunction() throws SQLException {
+        // The form findByDate avoids, written out by hand for contrast
+        Map<String, String> keys = chosenKeys(
+                "SELECT * FROM bills b WHERE DATE(b.bill_date) = ?", java.sql.Date.valueOf(FIXTURE_START.plusDays(14)));
+
+        assertNotEquals("idx_bills_date_type", keys.get("b"));
+    }
+
+    @Test
+    @DisplayName("Should use bill date index when finding bills by date and transaction type")
+    void shouldUseBillDateIndexForDateAndType() throws SQLException {
+        LocalDate date = FIXTURE_START.plusDays(14);
+
+        Map<String, String> keys = chosenKeys(
+                () -> new MySQLBillRepository().findByDateAndType(date, Bill.TransactionType.COUNTER));
+
+        assertEquals("idx_bills_date_type", keys.get("b"));
+    }
+
+    @Test
+    @DisplayName("Should use transaction type index when finding bills by transaction type")
+    void shouldUseTransactionTypeIndex() throws SQLException {
+        Map<String, String> keys = chosenKeys(
+                () -> new MySQLBillRepository().findByTransactionType(Bill.TransactionType.ONLINE));
+
+        assertEquals("idx_bills_type", keys.get("b"));
+    }
+
+    @Test
+    @DisplayName("Should use bill items index when finding a bill by serial number")
+    void shouldUseBillItemsIndexForJoin() throws SQLException {
+        Map<String, String> keys = chosenKeys(
+                () -> new MySQLBillRepository().findBySerialNumber(FIRST_FIXTURE_SERIAL + 1));
+
+        assertEquals("PRIMARY", keys.get("b"));
+        assertEquals("idx_bill_items_bill", keys.get("i"));
+    }
+
+    // ==================== STOCK BATCH AND USER FINDER TESTS ====================
+
+    @Test
+    @DisplayName("Should use product and purchase date index for batches of a product")
+    void shouldUseStockBatchIndexForProductCode() throws SQLException {
+        Map<String, String> keys = chosenKeys(
+                () -> new MySQLStockBatchRepository().findByProductCode(productCode(1)));
+
+        assertEquals("idx_stock_batches_product_purchase", keys.get("stock_batches"));
+    }
+
+    @Test
+    @DisplayName("Should use live batch index for the locked pages when depleting oldest batches first")
+    void shouldUseLiveBatchIndexForOldestFirst() throws SQLException {
+        List<RecordedStatement> statements = recordStatements(
+                () -> new MySQLStockBatchRepository().depleteStock(productCode(1), 5, BatchOrder.OLDEST_FIRST));
+
+        for (RecordedStatement statement : statements) {
+            assertEquals("idx_stock_batches_live_purchase", chosenKeys(statement).get("stock_batches"));
+        }
+        assertTrue(statements.get(0).sql().endsWith("FOR UPDATE SKIP LOCKED"));
+    }
+
+    @Test
+    @DisplayName("Should use live batch index for the locked pages when depleting closest expiry first")
+    void shouldUseLiveBatchIndexForExpiryFirst() throws SQLException {
+        List<RecordedStatement> statements = recordStatements(
+                () -> new MySQLStockBatchRepository().depleteStock(productCode(1), 5, BatchOrder.EXPIRY_FIRST));
+
+        for (RecordedStatement statement : statements) {
+            assertEquals("idx_stock_batches_live_expiry", chosenKeys(statement).get("stock_batches"));
+        }
+        assertTrue(statements.get(0).sql().endsWith("FOR UPDATE SKIP LOCKED"));
+    }
+
+    @Test
+    @DisplayName("Should use unique email key for user lookup")
+    void shouldUseEmailKeyForUserLookup() throws SQLException {
+        Map<String, String> keys = chosenKeys(() -> new MySQLUserRepository().findByEmail(email(1)));
+
+        assertEquals("email", keys.get("users"));
+    }
+}
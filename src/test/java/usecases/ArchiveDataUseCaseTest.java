@@ -0,0 +1,88 @@
+package usecases;
+
+import com.syos.usecases.ArchiveDataUseCase;
+import com.syos.usecases.repositories.BillRepository;
+import com.syos.usecases.repositories.StockBatchRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static org.mockito.ArgumentMatchers.any;
+
+import java.time.LocalDate;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Archive Data Use Case Tests")
+class ArchiveDataUseCaseTest {
+
+    @Mock
+    private BillRepository billRepository;
+
+    @Mock
+    private StockBatchRepository stockBatchRepository;
+
+    private ArchiveDataUseCase archiveDataUseCase;
+
+    @BeforeEach
+    void setUp() {
+        archiveDataUseCase = new ArchiveDataUseCase(billRepository, stockBatchRepository);
+    }
+
+    // ==================== HAPPY PATH TESTS ====================
+
+    @Test
+    @DisplayName("Should archive old bills and depleted batches")
+    void shouldArchiveOldBillsAndDepletedBatches() throws ArchiveDataUseCase.ArchiveException {
+        // ARRANGE
+        LocalDate horizon = LocalDate.now().minusDays(365);
+        when(billRepository.archiveBefore(horizon)).thenReturn(12);
+        when(stockBatchRepository.archiveDepleted()).thenReturn(3);
+
+        // ACT
+        ArchiveDataUseCase.ArchiveResult result = archiveDataUseCase.execute(horizon);
+
+        // ASSERT
+        assertEquals(12, result.getBillsArchived());
+        assertEquals(3, result.getBatchesArchived());
+        verify(billRepository).archiveBefore(horizon);
+        verify(stockBatchRepository).archiveDepleted();
+    }
+
+    @Test
+    @DisplayName("Should accept today as the horizon")
+    void shouldAcceptTodayAsHorizon() throws ArchiveDataUseCase.ArchiveException {
+        // ACT
+        ArchiveDataUseCase.ArchiveResult result = archiveDataUseCase.execute(LocalDate.now());
+
+        // ASSERT
+        assertEquals(0, result.getBillsArchived());
+        verify(billRepository).archiveBefore(LocalDate.now());
+    }
+
+    // ==================== VALIDATION ERROR TESTS ====================
+
+    @Test
+    @DisplayName("Should throw exception for null horizon")
+    void shouldThrowExceptionForNullHorizon() {
+        ArchiveDataUseCase.ArchiveException exception = assertThrows(
+                ArchiveDataUseCase.ArchiveException.class,
+                () -> archiveDataUseCase.execute(null));
+        assertEquals("Archive horizon cannot be null", exception.getMessage());
+        verify(billRepository, never()).archiveBefore(any());
+    }
+
+    @Test
+    @DisplayName("Should not archive anything for a horizon in the future")
+    void shouldRejectFutureHorizon() {
+        ArchiveDataUseCase.ArchiveException exception = assertThrows(
+                ArchiveDataUseCase.ArchiveException.class,
+                () -> archiveDataUseCase.execute(LocalDate.now().plusDays(1)));
+        assertEquals("Archive horizon cannot be in the future", exception.getMessage());
+        verify(billRepository, never()).archiveBefore(any());
+        verify(stockBatchRepository, never()).archiveDepleted();
+    }
+}
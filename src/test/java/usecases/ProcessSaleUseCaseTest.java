@@ -5,25 +5,33 @@ import com.syos.entities.Inventory;
 import com.syos.entities.Product;
 import com.syos.entities.StockBatch;
 import com.syos.usecases.ProcessSaleUseCase;
+import com.syos.usecases.UnitOfWork;
 import com.syos.usecases.observers.InventorySubject;
 import com.syos.usecases.repositories.BillRepository;
 import com.syos.usecases.repositories.InventoryRepository;
 import com.syos.usecases.repositories.ProductRepository;
 import com.syos.usecases.repositories.StockBatchRepository;
+import com.syos.usecases.strategies.BatchOrder;
 import com.syos.usecases.strategies.StockSelectionStrategy;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @ExtendWith(MockitoExtension.class)
@@ -89,6 +97,15 @@ class ProcessSaleUseCaseTest {
         return new ProcessSaleUseCase.SaleRequest(items, cashTendered, type, null);
     }
 
+    private void stubInventoryDecrement() {
+        when(inventoryRepository.tryDecrement(anyString(), any(Inventory.Location.class), anyInt())).thenReturn(true);
+    }
+
+    private void stubBillCreation(int serialNumber) {
+        when(billRepository.create(any(Bill.class)))
+                .thenAnswer(invocation -> invocation.<Bill>getArgument(0).withSerialNumber(serialNumber));
+    }
+
     // ==================== HAPPY PATH TESTS ====================
 
     @Test
@@ -102,7 +119,8 @@ class ProcessSaleUseCaseTest {
 
         when(productRepository.findByCode(productCode)).thenReturn(Optional.of(product));
         when(inventoryRepository.findByProductCode(productCode)).thenReturn(Optional.of(inventory));
-        when(billRepository.getNextSerialNumber()).thenReturn(1);
+        stubBillCreation(1);
+        stubInventoryDecrement();
         when(stockBatchRepository.findByProductCode(productCode)).thenReturn(Arrays.asList(batch));
         when(stockSelectionStrategy.selectBatch(any())).thenReturn(batch);
 
@@ -128,7 +146,8 @@ class ProcessSaleUseCaseTest {
 
         when(productRepository.findByCode(productCode)).thenReturn(Optional.of(product));
         when(inventoryRepository.findByProductCode(productCode)).thenReturn(Optional.of(inventory));
-        when(billRepository.getNextSerialNumber()).thenReturn(2);
+        stubBillCreation(2);
+        stubInventoryDecrement();
 
         ProcessSaleUseCase.SaleRequest request = createSaleRequest(
                 productCode, 5, 100.00, Bill.TransactionType.ONLINE);
@@ -263,7 +282,8 @@ class ProcessSaleUseCaseTest {
 
         when(productRepository.findByCode(productCode)).thenReturn(Optional.of(product));
         when(inventoryRepository.findByProductCode(productCode)).thenReturn(Optional.of(inventory));
-        when(billRepository.getNextSerialNumber()).thenReturn(1);
+        stubBillCreation(1);
+        stubInventoryDecrement();
         when(stockBatchRepository.findByProductCode(productCode)).thenReturn(Arrays.asList(batch));
         when(stockSelectionStrategy.selectBatch(any())).thenReturn(batch);
 
@@ -274,7 +294,70 @@ class ProcessSaleUseCaseTest {
         processSaleUseCase.execute(request);
 
         // ASSERT
-        verify(billRepository).save(any(Bill.class));
+        verify(billRepository).create(any(Bill.class));
+    }
+
+    @Test
+    @DisplayName("Should store every reduced stock batch in one bulk update")
+    void shouldStoreReducedBatchesInOneBulkUpdate() throws ProcessSaleUseCase.SaleException {
+        // ARRANGE
+        Product first = createTestProduct("P001", "First", 10.00);
+        Product second = createTestProduct("P002", "Second", 20.00);
+        StockBatch firstBatch = createTestBatch("P001", 100);
+        StockBatch secondBatch = createTestBatch("P002", 100);
+
+        when(productRepository.findByCode("P001")).thenReturn(Optional.of(first));
+        when(productRepository.findByCode("P002")).thenReturn(Optional.of(second));
+        when(inventoryRepository.findByProductCode("P001"))
+                .thenReturn(Optional.of(createTestInventory("P001", 100, 50)));
+        when(inventoryRepository.findByProductCode("P002"))
+                .thenReturn(Optional.of(createTestInventory("P002", 100, 50)));
+        stubBillCreation(1);
+        stubInventoryDecrement();
+        when(stockBatchRepository.findByProductCode("P001")).thenReturn(Arrays.asList(firstBatch));
+        when(stockBatchRepository.findByProductCode("P002")).thenReturn(Arrays.asList(secondBatch));
+        when(stockSelectionStrategy.selectBatch(Arrays.asList(firstBatch))).thenReturn(firstBatch);
+        when(stockSelectionStrategy.selectBatch(Arrays.asList(secondBatch))).thenReturn(secondBatch);
+
+        ProcessSaleUseCase.SaleRequest request = new ProcessSaleUseCase.SaleRequest(
+                Arrays.asList(
+                        new ProcessSaleUseCase.SaleRequest.SaleItem("P001", 5),
+                        new ProcessSaleUseCase.SaleRequest.SaleItem("P002", 3)),
+                200.00, Bill.TransactionType.COUNTER, null);
+
+        // ACT
+        processSaleUseCase.execute(request);
+
+        // ASSERT
+        verify(stockBatchRepository).updateAll(List.of(firstBatch, secondBatch));
+        verify(stockBatchRepository, never()).update(any(StockBatch.class));
+        assertEquals(95, firstBatch.getQuantity());
+        assertEquals(97, secondBatch.getQuantity());
+    }
+
+    @Test
+    @DisplayName("Should return bill with the serial number assigned by the repository")
+    void shouldReturnBillWithAssignedSerialNumber() throws ProcessSaleUseCase.SaleException {
+        // ARRANGE
+        String productCode = "P001";
+        Product product = createTestProduct(productCode, "Test", 10.00);
+        Inventory inventory = createTestInventory(productCode, 100, 50);
+
+        when(productRepository.findByCode(productCode)).thenReturn(Optional.of(product));
+        when(inventoryRepository.findByProductCode(productCode)).thenReturn(Optional.of(inventory));
+        stubBillCreation(42);
+        stubInventoryDecrement();
+
+        ProcessSaleUseCase.SaleRequest request = createSaleRequest(
+                productCode, 5, 100.00, Bill.TransactionType.ONLINE);
+
+        // ACT
+        Bill result = processSaleUseCase.execute(request);
+
+        // ASSERT
+        assertEquals(42, result.getSerialNumber());
+        verify(billRepository, never()).getNextSerialNumber();
+        verify(billRepository, never()).save(any(Bill.class));
     }
 
     @Test
@@ -288,7 +371,8 @@ class ProcessSaleUseCaseTest {
 
         when(productRepository.findByCode(productCode)).thenReturn(Optional.of(product));
         when(inventoryRepository.findByProductCode(productCode)).thenReturn(Optional.of(inventory));
-        when(billRepository.getNextSerialNumber()).thenReturn(1);
+        stubBillCreation(1);
+        stubInventoryDecrement();
         when(stockBatchRepository.findByProductCode(productCode)).thenReturn(Arrays.asList(batch));
         when(stockSelectionStrategy.selectBatch(any())).thenReturn(batch);
 
@@ -299,7 +383,33 @@ class ProcessSaleUseCaseTest {
         processSaleUseCase.execute(request);
 
         // ASSERT
-        verify(inventoryRepository).update(any(Inventory.class));
+        verify(inventoryRepository).tryDecrement(productCode, Inventory.Location.SHELF, 5);
+        verify(inventoryRepository, never()).update(any(Inventory.class));
+    }
+
+    @Test
+    @DisplayName("Should reject sale when stock was sold out concurrently")
+    void shouldRejectSaleWhenDecrementFails() {
+        // ARRANGE
+        String productCode = "P001";
+        Product product = createTestProduct(productCode, "Test", 10.00);
+        Inventory inventory = createTestInventory(productCode, 100, 50);
+
+        when(productRepository.findByCode(productCode)).thenReturn(Optional.of(product));
+        when(inventoryRepository.findByProductCode(productCode)).thenReturn(Optional.of(inventory));
+        when(inventoryRepository.tryDecrement(productCode, Inventory.Location.ONLINE, 5)).thenReturn(false);
+
+        ProcessSaleUseCase.SaleRequest request = createSaleRequest(
+                productCode, 5, 100.00, Bill.TransactionType.ONLINE);
+
+        // ACT & ASSERT
+        ProcessSaleUseCase.SaleException exception = assertThrows(
+                ProcessSaleUseCase.SaleException.class,
+                () -> processSaleUseCase.execute(request));
+        assertTrue(exception.getMessage().contains("Insufficient stock"));
+        assertEquals(50, inventory.getOnlineQuantity());
+        verify(billRepository, never()).create(any(Bill.class));
+        verify(inventorySubject, never()).notifyInventoryChanged(any(Inventory.class));
     }
 
     @Test
@@ -313,7 +423,8 @@ class ProcessSaleUseCaseTest {
 
         when(productRepository.findByCode(productCode)).thenReturn(Optional.of(product));
         when(inventoryRepository.findByProductCode(productCode)).thenReturn(Optional.of(inventory));
-        when(billRepository.getNextSerialNumber()).thenReturn(1);
+        stubBillCreation(1);
+        stubInventoryDecrement();
         when(stockBatchRepository.findByProductCode(productCode)).thenReturn(Arrays.asList(batch));
         when(stockSelectionStrategy.selectBatch(any())).thenReturn(batch);
 
@@ -338,7 +449,8 @@ class ProcessSaleUseCaseTest {
 
         when(productRepository.findByCode(productCode)).thenReturn(Optional.of(product));
         when(inventoryRepository.findByProductCode(productCode)).thenReturn(Optional.of(inventory));
-        when(billRepository.getNextSerialNumber()).thenReturn(1);
+        stubBillCreation(1);
+        stubInventoryDecrement();
         when(stockBatchRepository.findByProductCode(productCode)).thenReturn(Arrays.asList(batch));
         when(stockSelectionStrategy.selectBatch(any())).thenReturn(batch);
 
@@ -352,6 +464,150 @@ class ProcessSaleUseCaseTest {
         verify(stockSelectionStrategy).selectBatch(any());
     }
 
+    @Test
+    @DisplayName("Should let the repository deplete batches when the strategy has a batch order")
+    void shouldDepleteStockInRepositoryForOrderedStrategy() throws ProcessSaleUseCase.SaleException {
+        // ARRANGE
+        String productCode = "P001";
+        Product product = createTestProduct(productCode, "Test", 10.00);
+        Inventory inventory = createTestInventory(productCode, 100, 50);
+
+        when(productRepository.findByCode(productCode)).thenReturn(Optional.of(product));
+        when(inventoryRepository.findByProductCode(productCode)).thenReturn(Optional.of(inventory));
+        stubBillCreation(1);
+        stubInventoryDecrement();
+        when(stockSelectionStrategy.batchOrder()).thenReturn(Optional.of(BatchOrder.OLDEST_FIRST));
+        when(stockBatchRepository.depleteStock(productCode, 5, BatchOrder.OLDEST_FIRST))
+                .thenReturn(List.of(createTestBatch(productCode, 95)));
+
+        ProcessSaleUseCase.SaleRequest request = createSaleRequest(
+                productCode, 5, 100.00, Bill.TransactionType.COUNTER);
+
+        // ACT
+        processSaleUseCase.execute(request);
+
+        // ASSERT - Batches are neither loaded nor selected in memory
+        verify(stockBatchRepository).depleteStock(productCode, 5, BatchOrder.OLDEST_FIRST);
+        verify(stockBatchRepository, never()).findByProductCode(anyString());
+        verify(stockSelectionStrategy, never()).selectBatch(any());
+    }
+
+    @Test
+    @DisplayName("Should reject sale when the live batches cannot cover the quantity")
+    void shouldRejectSaleWhenDepletionFails() {
+        // ARRANGE
+        String productCode = "P001";
+        Product product = createTestProduct(productCode, "Test", 10.00);
+        Inventory inventory = createTestInventory(productCode, 100, 50);
+
+        when(productRepository.findByCode(productCode)).thenReturn(Optional.of(product));
+        when(inventoryRepository.findByProductCode(productCode)).thenReturn(Optional.of(inventory));
+        stubBillCreation(1);
+        stubInventoryDecrement();
+        when(stockSelectionStrategy.batchOrder()).thenReturn(Optional.of(BatchOrder.EXPIRY_FIRST));
+        when(stockBatchRepository.depleteStock(productCode, 5, BatchOrder.EXPIRY_FIRST)).thenReturn(List.of());
+
+        ProcessSaleUseCase.SaleRequest request = createSaleRequest(
+                productCode, 5, 100.00, Bill.TransactionType.COUNTER);
+
+        // ACT & ASSERT
+        assertThrows(ProcessSaleUseCase.SaleException.class, () -> processSaleUseCase.execute(request));
+        verify(inventoryRepository).increment(productCode, Inventory.Location.SHELF, 5);
+    }
+
+    @Test
+    @DisplayName("Should lock and decrement inventory in product code order")
+    void shouldLockInventoryInProductCodeOrder() throws ProcessSaleUseCase.SaleException {
+        // ARRANGE
+        for (String code : List.of("P001", "P002")) {
+            when(productRepository.findByCode(code)).thenReturn(Optional.of(createTestProduct(code, "Test", 10.00)));
+            when(inventoryRepository.findByProductCode(code)).thenReturn(Optional.of(createTestInventory(code, 100, 50)));
+        }
+        stubInventoryDecrement();
+        stubBillCreation(1);
+
+        ProcessSaleUseCase.SaleRequest request = new ProcessSaleUseCase.SaleRequest(List.of(
+                new ProcessSaleUseCase.SaleRequest.SaleItem("P002", 1),
+                new ProcessSaleUseCase.SaleRequest.SaleItem("P001", 2)),
+                100.00, Bill.TransactionType.ONLINE, null);
+
+        // ACT
+        Bill result = processSaleUseCase.execute(request);
+
+        // ASSERT - the bill keeps the requested order, the locks do not
+        assertEquals("P002", result.getItems().get(0).getProductCode());
+        InOrder inOrder = inOrder(inventoryRepository);
+        inOrder.verify(inventoryRepository).findByProductCode("P001");
+        inOrder.verify(inventoryRepository).findByProductCode("P002");
+        inOrder.verify(inventoryRepository).tryDecrement("P001", Inventory.Location.ONLINE, 2);
+        inOrder.verify(inventoryRepository).tryDecrement("P002", Inventory.Location.ONLINE, 1);
+    }
+
+    // ==================== FAILED SALE RECOVERY TESTS ====================
+
+    @Test
+    @DisplayName("Should restore the first item's stock when the second item fails")
+    void shouldRestoreStockOfEarlierItemsWhenLaterItemFails() {
+        // ARRANGE - stored shelf quantities; P002 was sold down to 3 after it was read
+        Map<String, Integer> storedShelf = new HashMap<>(Map.of("P001", 100, "P002", 3));
+        when(productRepository.findByCode("P001")).thenReturn(Optional.of(createTestProduct("P001", "First", 10.00)));
+        when(productRepository.findByCode("P002")).thenReturn(Optional.of(createTestProduct("P002", "Second", 20.00)));
+        when(inventoryRepository.findByProductCode("P001")).thenReturn(Optional.of(createTestInventory("P001", 100, 50)));
+        when(inventoryRepository.findByProductCode("P002")).thenReturn(Optional.of(createTestInventory("P002", 10, 50)));
+        when(inventoryRepository.tryDecrement(anyString(), eq(Inventory.Location.SHELF), anyInt()))
+                .thenAnswer(invocation -> {
+                    String code = invocation.getArgument(0);
+                    int quantity = invocation.getArgument(2);
+                    if (storedShelf.get(code) < quantity) {
+                        return false;
+                    }
+                    storedShelf.merge(code, -quantity, Integer::sum);
+                    return true;
+                });
+        doAnswer(invocation -> storedShelf.merge(invocation.getArgument(0), invocation.getArgument(2), Integer::sum))
+                .when(inventoryRepository).increment(anyString(), eq(Inventory.Location.SHELF), anyInt());
+
+        ProcessSaleUseCase.SaleRequest request = new ProcessSaleUseCase.SaleRequest(List.of(
+                new ProcessSaleUseCase.SaleRequest.SaleItem("P001", 5),
+                new ProcessSaleUseCase.SaleRequest.SaleItem("P002", 5)),
+                200.00, Bill.TransactionType.COUNTER, null);
+
+        // ACT
+        ProcessSaleUseCase.SaleException exception = assertThrows(
+                ProcessSaleUseCase.SaleException.class,
+                () -> processSaleUseCase.execute(request));
+
+        // ASSERT
+        assertTrue(exception.getMessage().contains("P002"));
+        verify(inventoryRepository).increment("P001", Inventory.Location.SHELF, 5);
+        verify(inventoryRepository, never()).increment(eq("P002"), any(Inventory.Location.class), anyInt());
+        assertEquals(100, storedShelf.get("P001"));
+        assertEquals(3, storedShelf.get("P002"));
+        verify(billRepository, never()).create(any(Bill.class));
+        verify(inventorySubject, never()).notifyInventoryChanged(any(Inventory.class));
+    }
+
+    @Test
+    @DisplayName("Should restore decremented stock when storing the bill fails")
+    void shouldRestoreStockWhenBillCreationFails() {
+        // ARRANGE
+        String productCode = "P001";
+        Product product = createTestProduct(productCode, "Test", 10.00);
+        Inventory inventory = createTestInventory(productCode, 100, 50);
+
+        when(productRepository.findByCode(productCode)).thenReturn(Optional.of(product));
+        when(inventoryRepository.findByProductCode(productCode)).thenReturn(Optional.of(inventory));
+        stubInventoryDecrement();
+        when(billRepository.create(any(Bill.class))).thenThrow(new RuntimeException("Error saving bill: disk full"));
+
+        ProcessSaleUseCase.SaleRequest request = createSaleRequest(
+                productCode, 5, 100.00, Bill.TransactionType.ONLINE);
+
+        // ACT & ASSERT
+        assertThrows(RuntimeException.class, () -> processSaleUseCase.execute(request));
+        verify(inventoryRepository).increment(productCode, Inventory.Location.ONLINE, 5);
+    }
+
     // ==================== INVENTORY REDUCTION TESTS ====================
 
     @Test
@@ -368,7 +624,8 @@ class ProcessSaleUseCaseTest {
 
         when(productRepository.findByCode(productCode)).thenReturn(Optional.of(product));
         when(inventoryRepository.findByProductCode(productCode)).thenReturn(Optional.of(inventory));
-        when(billRepository.getNextSerialNumber()).thenReturn(1);
+        stubBillCreation(1);
+        stubInventoryDecrement();
         when(stockBatchRepository.findByProductCode(productCode)).thenReturn(Arrays.asList(batch));
         when(stockSelectionStrategy.selectBatch(any())).thenReturn(batch);
 
@@ -395,7 +652,8 @@ class ProcessSaleUseCaseTest {
 
         when(productRepository.findByCode(productCode)).thenReturn(Optional.of(product));
         when(inventoryRepository.findByProductCode(productCode)).thenReturn(Optional.of(inventory));
-        when(billRepository.getNextSerialNumber()).thenReturn(1);
+        stubBillCreation(1);
+        stubInventoryDecrement();
 
         ProcessSaleUseCase.SaleRequest request = createSaleRequest(
                 productCode, saleQty, 100.00, Bill.TransactionType.ONLINE);
@@ -406,4 +664,66 @@ class ProcessSaleUseCaseTest {
         // ASSERT - Online quantity should be reduced
         assertEquals(initialOnlineQty - saleQty, inventory.getOnlineQuantity());
     }
+
+    // ==================== UNIT OF WORK TESTS ====================
+
+    @Test
+    @DisplayName("Should run the whole sale as one unit of work")
+    void shouldRunSaleAsOneUnitOfWork() throws ProcessSaleUseCase.SaleException {
+        // ARRANGE
+        String productCode = "P001";
+        Product product = createTestProduct(productCode, "Test", 10.00);
+        Inventory inventory = createTestInventory(productCode, 100, 50);
+        int[] executions = new int[1];
+        UnitOfWork unitOfWork = new UnitOfWork() {
+            @Override
+            public <T, E extends Exception> T execute(Work<T, E> work) throws E {
+                executions[0]++;
+                return work.run();
+            }
+        };
+        ProcessSaleUseCase useCase = new ProcessSaleUseCase(productRepository, billRepository,
+                inventoryRepository, stockBatchRepository, stockSelectionStrategy, inventorySubject, unitOfWork);
+
+        when(productRepository.findByCode(productCode)).thenReturn(Optional.of(product));
+        when(inventoryRepository.findByProductCode(productCode)).thenReturn(Optional.of(inventory));
+        stubBillCreation(1);
+        stubInventoryDecrement();
+
+        // ACT
+        useCase.execute(createSaleRequest(productCode, 5, 100.00, Bill.TransactionType.ONLINE));
+
+        // ASSERT
+        assertEquals(1, executions[0]);
+        verify(inventoryRepository, times(1)).findByProductCode(productCode);
+        verify(inventorySubject).notifyInventoryChanged(inventory);
+    }
+
+    @Test
+    @DisplayName("Should not notify observers when the unit of work fails to commit")
+    void shouldNotNotifyObserversWhenCommitFails() {
+        // ARRANGE
+        String productCode = "P001";
+        Product product = createTestProduct(productCode, "Test", 10.00);
+        Inventory inventory = createTestInventory(productCode, 100, 50);
+        UnitOfWork failingCommit = new UnitOfWork() {
+            @Override
+            public <T, E extends Exception> T execute(Work<T, E> work) throws E {
+                work.run();
+                throw new IllegalStateException("Commit failed");
+            }
+        };
+        ProcessSaleUseCase useCase = new ProcessSaleUseCase(productRepository, billRepository,
+                inventoryRepository, stockBatchRepository, stockSelectionStrategy, inventorySubject, failingCommit);
+
+        when(productRepository.findByCode(productCode)).thenReturn(Optional.of(product));
+        when(inventoryRepository.findByProductCode(productCode)).thenReturn(Optional.of(inventory));
+        stubBillCreation(1);
+        stubInventoryDecrement();
+
+        // ACT & ASSERT
+        assertThrows(IllegalStateException.class,
+                () -> useCase.execute(createSaleRequest(productCode, 5, 100.00, Bill.TransactionType.ONLINE)));
+        verify(inventorySubject, never()).notifyInventoryChanged(any(Inventory.class));
+    }
 }
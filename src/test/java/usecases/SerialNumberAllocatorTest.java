@@ -0,0 +1,145 @@
+package usecases;
+
+import com.syos.usecases.SerialNumberAllocator;
+import com.syos.usecases.repositories.SequenceRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Serial Number Allocator Tests")
+class SerialNumberAllocatorTest {
+
+    @Mock
+    private SequenceRepository sequenceRepository;
+
+    private AtomicInteger seedCalls;
+
+    @BeforeEach
+    void setUp() {
+        seedCalls = new AtomicInteger();
+    }
+
+    // ==================== HELPER METHODS ====================
+
+    /**
+     * In-memory sequence store that behaves like the JSON and MySQL ones.
+     */
+    private SequenceRepository inMemorySequences() {
+        ConcurrentHashMap<String, Integer> nextValues = new ConcurrentHashMap<>();
+        return (name, blockSize, minimumValue) -> {
+            int[] start = new int[1];
+            nextValues.compute(name, (key, current) -> {
+                start[0] = current == null ? minimumValue : Math.max(current, minimumValue);
+                return start[0] + blockSize;
+            });
+            return start[0];
+        };
+    }
+
+    // ==================== HAPPY PATH TESTS ====================
+
+    @Test
+    @DisplayName("Should allocate consecutive serials from the reserved block")
+    void shouldAllocateConsecutiveSerials() {
+        // ARRANGE
+        when(sequenceRepository.reserveBlock("bills", 10, 1)).thenReturn(1);
+        SerialNumberAllocator allocator = new SerialNumberAllocator(sequenceRepository, "bills", 10, () -> 1);
+
+        // ACT & ASSERT
+        assertEquals(1, allocator.next());
+        assertEquals(2, allocator.next());
+        assertEquals(3, allocator.next());
+        verify(sequenceRepository, times(1)).reserveBlock("bills", 10, 1);
+    }
+
+    @Test
+    @DisplayName("Should reserve a new block only when the current one is used up")
+    void shouldReserveNewBlockWhenExhausted() {
+        // ARRANGE
+        when(sequenceRepository.reserveBlock("bills", 2, 1)).thenReturn(1, 3);
+        SerialNumberAllocator allocator = new SerialNumberAllocator(sequenceRepository, "bills", 2, () -> 1);
+
+        // ACT
+        List<Integer> serials = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            serials.add(allocator.next());
+        }
+
+        // ASSERT
+        assertEquals(List.of(1, 2, 3, 4), serials);
+        verify(sequenceRepository, times(2)).reserveBlock("bills", 2, 1);
+    }
+
+    @Test
+    @DisplayName("Should evaluate the seed only once")
+    void shouldSeedOnlyOnce() {
+        // ARRANGE
+        SerialNumberAllocator allocator = new SerialNumberAllocator(inMemorySequences(), "bills", 2, () -> {
+            seedCalls.incrementAndGet();
+            return 42;
+        });
+
+        // ACT
+        int first = allocator.next();
+        allocator.next();
+        int third = allocator.next();
+
+        // ASSERT
+        assertEquals(42, first);
+        assertEquals(44, third);
+        assertEquals(1, seedCalls.get());
+    }
+
+    @Test
+    @DisplayName("Should never hand out the same serial to two tills")
+    void shouldNotCollideAcrossTills() throws Exception {
+        // ARRANGE
+        SequenceRepository sequences = inMemorySequences();
+        SerialNumberAllocator tillOne = new SerialNumberAllocator(sequences, "bills", 5, () -> 1);
+        SerialNumberAllocator tillTwo = new SerialNumberAllocator(sequences, "bills", 5, () -> 1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // ACT
+        List<Future<Integer>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 200; i++) {
+                SerialNumberAllocator till = i % 2 == 0 ? tillOne : tillTwo;
+                futures.add(executor.submit(till::next));
+            }
+            Set<Integer> serials = new HashSet<>();
+            for (Future<Integer> future : futures) {
+                serials.add(future.get());
+            }
+
+            // ASSERT
+            assertEquals(200, serials.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // ==================== VALIDATION TESTS ====================
+
+    @Test
+    @DisplayName("Should reject a non-positive block size")
+    void shouldRejectInvalidBlockSize() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new SerialNumberAllocator(sequenceRepository, "bills", 0, () -> 1));
+    }
+}
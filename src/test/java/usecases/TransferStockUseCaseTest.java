@@ -19,6 +19,7 @@ import static org.mockito.ArgumentMatchers.any;
 
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 @ExtendWith(MockitoExtension.class)
@@ -195,7 +196,7 @@ class TransferStockUseCaseTest {
         transferStockUseCase.execute(productCode, 10, TransferStockUseCase.TransferType.STORE_TO_SHELF);
 
         // ASSERT
-        verify(stockBatchRepository).update(any(StockBatch.class));
+        verify(stockBatchRepository).updateAll(List.of(batch));
     }
 
     @Test
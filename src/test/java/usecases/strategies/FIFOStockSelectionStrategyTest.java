@@ -1,6 +1,7 @@
 package usecases.strategies;
 
 import com.syos.entities.StockBatch;
+import com.syos.usecases.strategies.BatchOrder;
 import com.syos.usecases.strategies.FIFOStockSelectionStrategy;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
@@ -11,6 +12,8 @@ import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @DisplayName("FIFO Stock Selection Strategy Tests")
 class FIFOStockSelectionStrategyTest {
@@ -107,4 +110,17 @@ class FIFOStockSelectionStrategyTest {
 
         assertEquals(singleBatch, strategy.selectBatch(Arrays.asList(singleBatch)));
     }
+
+    // TEST 8: Should report oldest-first order, matching the batch it selects
+    @Test
+    void shouldReportOldestFirstBatchOrder() {
+        StockBatch oldBatch = new StockBatch("P001",
+                LocalDate.now().minusDays(10), 50, LocalDate.now().plusDays(60));
+        StockBatch newBatch = new StockBatch("P001",
+                LocalDate.now().minusDays(2), 50, LocalDate.now().plusDays(5));
+
+        assertEquals(Optional.of(BatchOrder.OLDEST_FIRST), strategy.batchOrder());
+        assertEquals(strategy.selectBatch(Arrays.asList(newBatch, oldBatch)),
+                Stream.of(newBatch, oldBatch).min(BatchOrder.OLDEST_FIRST.comparator()).orElseThrow());
+    }
 }
\ No newline at end of file